@@ -58,6 +58,21 @@ public class RealDoubleFFT extends RealDoubleFFT_Mixed {
     ch = new double[n];
   }
 
+  /**
+   * Construct a transform of the same size as <em>plan</em> that shares its wavenumber table.
+   * The table is only read by the transforms, so each thread can use its own instance of one plan;
+   * only the work array is allocated.
+   *
+   * @param  plan  transform of the wanted size.
+   */
+  public RealDoubleFFT(RealDoubleFFT plan)
+  {
+    ndim = plan.ndim;
+    norm_factor = plan.norm_factor;
+    wavetable = plan.wavetable;
+    ch = new double[ndim];
+  }
+
   /**
    * Forward real FFT transform. It computes the discrete transform of a real data sequence.
    *
@@ -0,0 +1,116 @@
+package com.example.phoneear;
+
+import android.os.Build;
+import android.os.Debug;
+
+import java.util.Locale;
+
+/*
+Sources:
+https://developer.android.com/reference/android/os/Debug.html#getThreadAllocSize()
+https://developer.android.com/reference/android/os/Debug.html#getRuntimeStat(java.lang.String)
+https://source.android.com/devices/tech/dalvik/gc-debug
+ */
+
+/**
+ * Allocation and GC pressure seen by the sampling thread, a debugging aid (AnalyzerParameters.allocationMonitor):
+ * bytes and objects allocated per second by the thread that created the monitor, and the garbage
+ * collections of the process meanwhile. The blocking ones (Android 6.0 and later) are shown apart:
+ * a thread that allocates while the heap is full waits for them, which is what makes the recorder
+ * overrun, so blocking GCs in an interval in which the sampling thread allocated are its own.
+ *
+ * Allocation counting makes every allocation slower, only switch it on to look for garbage.
+ * The methods must be called on the monitored thread.
+ */
+class AllocationMonitor {
+    private long lastNanos;
+    private long lastGcCount, lastGcMillis, lastBlockingCount, lastBlockingMillis;
+
+    private double bytesPerSecond;
+    private double objectsPerSecond;
+    private long gcCount, gcMillis, blockingCount, blockingMillis;   // in the last interval
+
+    @SuppressWarnings("deprecation")
+    AllocationMonitor() {
+        Debug.resetThreadAllocSize();
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        lastNanos = System.nanoTime();
+        lastGcCount = runtimeStat("art.gc.gc-count");
+        lastGcMillis = runtimeStat("art.gc.gc-time");
+        lastBlockingCount = runtimeStat("art.gc.blocking-gc-count");
+        lastBlockingMillis = runtimeStat("art.gc.blocking-gc-time");
+    }
+
+    // -1 if not available
+    private static long runtimeStat(String name) {
+        if (Build.VERSION.SDK_INT < 23) {
+            return -1;
+        }
+        String value = Debug.getRuntimeStat(name);
+        return value == null ? -1 : Long.parseLong(value);
+    }
+
+    // Ends an interval, the values of the getters are for it.
+    @SuppressWarnings("deprecation")
+    void update() {
+        long now = System.nanoTime();
+        double seconds = (now - lastNanos) / 1e9;
+        lastNanos = now;
+        // the counters are int, so they are reset for every interval
+        bytesPerSecond = Debug.getThreadAllocSize() / seconds;
+        objectsPerSecond = Debug.getThreadAllocCount() / seconds;
+        Debug.resetThreadAllocSize();
+        Debug.resetThreadAllocCount();
+
+        long count = runtimeStat("art.gc.gc-count");
+        long millis = runtimeStat("art.gc.gc-time");
+        long blocking = runtimeStat("art.gc.blocking-gc-count");
+        long blockingTime = runtimeStat("art.gc.blocking-gc-time");
+        gcCount = count - lastGcCount;
+        gcMillis = millis - lastGcMillis;
+        blockingCount = blocking - lastBlockingCount;
+        blockingMillis = blockingTime - lastBlockingMillis;
+        lastGcCount = count;
+        lastGcMillis = millis;
+        lastBlockingCount = blocking;
+        lastBlockingMillis = blockingTime;
+    }
+
+    double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    double getObjectsPerSecond() {
+        return objectsPerSecond;
+    }
+
+    // garbage collections of the process in the last interval, 0 before Android 6.0
+    long getGcCount() {
+        return gcCount;
+    }
+
+    long getGcMillis() {
+        return gcMillis;
+    }
+
+    long getBlockingGcCount() {
+        return blockingCount;
+    }
+
+    long getBlockingGcMillis() {
+        return blockingMillis;
+    }
+
+    @SuppressWarnings("deprecation")
+    void stop() {
+        Debug.stopAllocCounting();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "sampling thread allocates %.1f kB/s in %.0f objects/s, GC %d (%d ms),"
+                + " blocking GC %d (%d ms)%s", bytesPerSecond / 1024, objectsPerSecond, gcCount, gcMillis,
+                blockingCount, blockingMillis, blockingCount > 0 && bytesPerSecond > 0 ? " while it allocated" : "");
+    }
+}
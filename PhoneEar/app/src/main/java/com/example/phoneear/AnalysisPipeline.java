@@ -0,0 +1,240 @@
+package com.example.phoneear;
+
+import android.util.Log;
+
+import java.nio.ShortBuffer;
+
+/**
+ * The analysis of the received samples, from the STFT to the decoded message, without any
+ * dependency on the recorder or the UI. SamplingLoop feeds it from the capture ring; for
+ * profiling and regression it can be fed straight from a file or synthesized samples (see
+ * MessageCollector), which runs the same code at many times real time.
+ *
+ * Per chunk of samples: standby detection (AnalyzerParameters.standbyMode), the STFT of every
+ * channel with diversity combining, a detection tick every 50 ms of samples and the CPU governor.
+ */
+class AnalysisPipeline {
+    private static final String TAG = "AnalysisPipeline";
+
+    interface Listener {
+        // a new spectrum, only valid during the call
+        void spectrumReady(double[] spectrumDB);
+        void standbyChanged(boolean standby);
+    }
+
+    private final AnalyzerParameters analyzerParam;
+    private final int nChannels;
+    private final Listener listener;
+
+    private final ChannelPlan channelPlan;
+    private final MessageDecoder messageDecoder;
+    private final SymbolDetector symbolDetector;
+    private final ParallelDecoder parallelDecoder;   // null if only one detector configuration is used
+
+    private final MultiChannelSTFT stft;
+    private final StandbyDetector standbyDetector;   // null if standby mode is off
+    private final CpuGovernor governor;              // null without CPU budget
+    private int nFFTAverage;
+    private boolean standby;
+    private long samplesIdle;
+    private final long standbyAfterSamples;
+    // time since the last detection tick, counted in samples so it follows the measured sample rate
+    private long samplesSinceUpdate;
+    private volatile double sampleRateReal;
+    private final PipelineMetrics metrics = new PipelineMetrics();
+
+    // The channel plan depends on the sample rate, analyzerParam.sampleRate must be the actual one.
+    AnalysisPipeline(AnalyzerParameters analyzerParam, int nChannels, final MessageDecoder.Output output,
+                     Listener listener) {
+        this.analyzerParam = analyzerParam;
+        this.nChannels = nChannels;
+        this.listener = listener;
+        sampleRateReal = analyzerParam.sampleRate;
+
+        channelPlan = ChannelPlan.create(analyzerParam);
+        if (channelPlan.getMinSpacingBins() < 1) {
+            Log.w(TAG, "AnalysisPipeline(): carriers closer than one bin, fftLen " + analyzerParam.fftLen
+                    + " is too small to tell them apart.");
+        }
+        MultiToneCode multiToneCode = new MultiToneCode(channelPlan.getDataCarriers(), analyzerParam.multiToneWeight);
+        messageDecoder = new MessageDecoder(analyzerParam, multiToneCode, output);
+        symbolDetector = new SymbolDetector(channelPlan, analyzerParam.detectorConfig, analyzerParam.multiToneMode,
+                multiToneCode, messageDecoder);
+        if (analyzerParam.parallelDecoders > 1) {
+            parallelDecoder = new ParallelDecoder(analyzerParam, channelPlan, multiToneCode,
+                    DetectorConfig.variants(analyzerParam.detectorConfig, analyzerParam.parallelDecoders),
+                    new ParallelDecoder.Listener() {
+                        @Override
+                        public void messageAccepted(String message, DetectorConfig config) {
+                            output.append("\n[" + message + "] " + config);
+                            output.messageDecoded(message, true);
+                        }
+                    });
+        } else {
+            parallelDecoder = null;
+        }
+
+        stft = MultiChannelSTFT.create(analyzerParam, channelPlan, nChannels, analyzerParam.diversityMaxSnr);
+        if (analyzerParam.hopLen > analyzerParam.fftLen) {
+            Log.w(TAG, "AnalysisPipeline(): hopLen " + analyzerParam.hopLen + " > fftLen " + analyzerParam.fftLen
+                    + ", " + (analyzerParam.hopLen - analyzerParam.fftLen) * 100 / analyzerParam.hopLen
+                    + " % of the samples are not analysed.");
+        }
+        nFFTAverage = analyzerParam.nFFTAverage;
+        governor = analyzerParam.cpuBudget > 0
+                ? new CpuGovernor(analyzerParam.fftLen, analyzerParam.hopLen, analyzerParam.nFFTAverage,
+                                  analyzerParam.sampleRate, analyzerParam.cpuBudget)
+                : null;
+        if (governor != null && governor.getHopLen() != analyzerParam.hopLen) {
+            // the governor starts at its lowest level if hopLen is none of its levels, the STFT must too
+            Log.w(TAG, "AnalysisPipeline(): hopLen " + analyzerParam.hopLen + " is no quality level, starting with "
+                    + governor.getHopLen() + ".");
+            stft.setHopLen(governor.getHopLen());
+            nFFTAverage = governor.getFFTAverage();
+        }
+        // standby mode: only the StandbyDetector runs until it hears a starting signal
+        standbyDetector = analyzerParam.standbyMode ? new StandbyDetector(channelPlan, nChannels) : null;
+        standbyAfterSamples = (long) (analyzerParam.standbyAfterSeconds * analyzerParam.sampleRate);
+    }
+
+    // latency of the stages, see PipelineMetrics
+    PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    ChannelPlan getChannelPlan() {
+        return channelPlan;
+    }
+
+    int getChannels() {
+        return nChannels;
+    }
+
+    boolean isStandby() {
+        return standby;
+    }
+
+    // true while a message is received
+    boolean isReceiving() {
+        return parallelDecoder != null ? parallelDecoder.isReceiving() : messageDecoder.isStarted();
+    }
+
+    // Starts the worker threads, call before the first samples.
+    void start() {
+        if (parallelDecoder != null) {
+            parallelDecoder.start();
+        }
+        stft.start(analyzerParam.stftThreads, analyzerParam.channelThreads);
+        if (standbyDetector != null) {
+            setStandby(true);
+        }
+    }
+
+    // Stops the worker threads.
+    void finish() {
+        stft.stop();
+        if (parallelDecoder != null) {
+            parallelDecoder.finish();
+        }
+    }
+
+    // Measured sample rate of the recorder, may be called from another thread.
+    void setSampleRateReal(double sampleRateReal) {
+        this.sampleRateReal = sampleRateReal;
+        if (parallelDecoder != null) {
+            parallelDecoder.setSampleRateReal(sampleRateReal);
+        } else {
+            symbolDetector.setSampleRateReal(sampleRateReal);
+        }
+    }
+
+    // dsLen interleaved samples from offset on, a multiple of the channel count.
+    // fallingBehind: the caller can not keep up, for the CPU governor.
+    void process(short[] ds, int offset, int dsLen, boolean fallingBehind) {
+        process(ds, null, offset, dsLen, fallingBehind);
+    }
+
+    void process(ShortBuffer ds, int offset, int dsLen, boolean fallingBehind) {
+        process(null, ds, offset, dsLen, fallingBehind);
+    }
+
+    private void process(short[] array, ShortBuffer buffer, int offset, int dsLen, boolean fallingBehind) {
+        int nFrames = dsLen / nChannels;
+        if (standby) {
+            boolean wake = array != null
+                    ? standbyDetector.feedData(array, offset, dsLen)
+                    : standbyDetector.feedData(buffer, offset, dsLen);
+            if (! wake) {
+                return;
+            }
+            Log.i(TAG, "AnalysisPipeline::process(): starting signal heard, leaving standby.");
+            samplesIdle = 0;
+            stft.clear();
+            // the state of before the standby is stale: windows, noise floor, frequency offset
+            if (parallelDecoder != null) {
+                parallelDecoder.reset();
+            } else {
+                symbolDetector.reset();
+            }
+            setStandby(false);
+            // the chunk holds the beginning of the starting signal, it is analysed below
+        }
+
+        long processingStart = System.nanoTime();
+        if (array != null) {
+            stft.feedData(array, offset, dsLen);
+        } else {
+            stft.feedData(buffer, offset, dsLen);
+        }
+        long t = System.nanoTime();
+        metrics.record(PipelineMetrics.FEED, t - processingStart);
+        samplesSinceUpdate += nFrames;
+
+        if (standbyDetector != null) {
+            if (isReceiving()) {
+                samplesIdle = 0;
+            } else if ((samplesIdle += nFrames) > standbyAfterSamples) {
+                Log.i(TAG, "AnalysisPipeline::process(): no message, back to standby.");
+                standbyDetector.reset();
+                setStandby(true);
+                return;
+            }
+        }
+
+        // If there is new spectrum data, do plot
+        if (stft.nElemSpectrumAmp() >= nFFTAverage) {
+            double[] spectrumDB = stft.getSpectrumAmpDB();
+            long t1 = System.nanoTime();
+            metrics.record(PipelineMetrics.SPECTRUM, t1 - t);
+            listener.spectrumReady(spectrumDB);
+            t = System.nanoTime();
+            metrics.record(PipelineMetrics.UI, t - t1);
+
+            // update recent value list every 50ms
+            if (samplesSinceUpdate * 1000.0 / sampleRateReal > 50) {
+                samplesSinceUpdate = 0;
+                if (parallelDecoder != null) {
+                    parallelDecoder.publish(spectrumDB);
+                } else {
+                    symbolDetector.process(spectrumDB);
+                }
+                t1 = System.nanoTime();
+                metrics.record(PipelineMetrics.DECODE, t1 - t);
+                metrics.decoded(t1);
+            }
+        }
+
+        if (governor != null && governor.update(System.nanoTime() - processingStart, nFrames, fallingBehind)) {
+            stft.setHopLen(governor.getHopLen());
+            nFFTAverage = governor.getFFTAverage();
+            Log.i(TAG, "AnalysisPipeline::process(): quality level " + governor.getLevel() + ", hopLen "
+                    + governor.getHopLen() + ", nFFTAverage " + nFFTAverage
+                    + ", load " + Math.round(governor.getLastLoad() * 100) + " %");
+        }
+    }
+
+    private void setStandby(boolean standby) {
+        this.standby = standby;
+        listener.standbyChanged(standby);
+    }
+}
@@ -16,6 +16,8 @@
 package com.example.phoneear;
 
 import android.content.res.Resources;
+import android.media.AudioFormat;
+import android.media.AudioRecord;
 import android.media.MediaRecorder;
 import android.util.Log;
 
@@ -25,7 +27,7 @@ import android.util.Log;
  * Basic properties of Analyzer.
  */
 
-class AnalyzerParameters {
+class AnalyzerParameters implements Cloneable {
     final int RECORDER_AGC_OFF = MediaRecorder.AudioSource.VOICE_RECOGNITION;
     int audioSourceId = RECORDER_AGC_OFF;
     int sampleRate = 44100;
@@ -38,6 +40,25 @@ class AnalyzerParameters {
     final int BYTE_OF_SAMPLE = 2;
     final double SAMPLE_VALUE_MAX = 32767.0;   // Maximum signal value
     double spectrogramDuration = 4.0;
+    boolean multiToneMode = false;  // several digit carriers on per symbol, see MultiToneCode
+    int multiToneWeight = 3;        // active carriers per symbol in multi-tone mode (3 of 10 -> two digits)
+    boolean binaryFraming = false;  // length-prefixed frames with CRC, log2(code words) bits per multi-tone symbol
+    int fecParitySymbols = 4;       // Reed-Solomon parity symbols per block of 15 in binary framing, 0 = off
+    DetectorConfig detectorConfig = new DetectorConfig();
+    int parallelDecoders = 0;       // > 1: run that many detector variants on worker threads, see ParallelDecoder
+    int channels = 1;               // 2: stereo capture, one STFT per microphone, see MultiChannelSTFT
+    boolean diversityMaxSnr = false;  // stereo: use the microphone with the best SNR instead of combining both
+    int stftThreads = 1;            // > 1: FFTs of successive frames on that many threads, for high overlap
+    boolean channelThreads = true;  // stereo: channels 1.. on a thread each, else all on the calling thread
+    double cpuBudget = 0;           // > 0: fraction of one core the analysis may use, see CpuGovernor
+    boolean standbyMode = false;    // only a cheap StandbyDetector runs until a starting signal is heard
+    double standbyAfterSeconds = 3; // back to standby after this long without a message
+    boolean directBuffer = false;   // record into a direct ByteBuffer instead of a short[], see CaptureRing
+    boolean extendedBand = false;   // capture at 96/48 kHz if possible and use the wider carriers up to 28 kHz
+    final int[] EXTENDED_SAMPLE_RATES = {96000, 48000};  // tried in this order by probeSampleRate()
+    double metricsDumpSeconds = 10; // log the stage latencies (PipelineMetrics) this often, 0 = only at the end
+    boolean allocationMonitor = false;  // log the allocations of the sampling thread and the GCs, see AllocationMonitor
+    String inputFile = null;        // replay this WAV file in real time instead of recording, see FileAudioSource
 
     double[] micGainDB = null;  // should have fftLen/2+1 elements, i.e. include DC.
     String calibName = null;
@@ -46,6 +67,19 @@ class AnalyzerParameters {
         getAudioSourceNameFromIdPrepare(res);
     }
 
+    // Without the audio source names, for the analysis of recordings off the device (AnalysisPipeline).
+    AnalyzerParameters() {
+    }
+
+    // Shallow copy, e.g. one per file of BatchDecoder; detectorConfig and micGainDB are shared.
+    AnalyzerParameters copy() {
+        try {
+            return (AnalyzerParameters) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     String[] audioSourceNames;
     int[] audioSourceIDs;
     private void getAudioSourceNameFromIdPrepare(Resources res) {
@@ -60,7 +94,7 @@ class AnalyzerParameters {
     // Get audio source name from its ID
     // Tell me if there is better way to do it.
     String getAudioSourceNameFromId(int id) {
-        for (int i = 0; i < audioSourceNames.length; i++) {
+        for (int i = 0; audioSourceNames != null && i < audioSourceNames.length; i++) {
             if (audioSourceIDs[i] == id) {
                 return audioSourceNames[i];
             }
@@ -69,6 +103,27 @@ class AnalyzerParameters {
         return ((Integer)(id)).toString();
     }
 
+    // Channel mask of the recorder for `channels`.
+    int getChannelConfig() {
+        return channels == 2 ? AudioFormat.CHANNEL_IN_STEREO : AudioFormat.CHANNEL_IN_MONO;
+    }
+
+    // Use the highest sample rate of EXTENDED_SAMPLE_RATES the recorder accepts, else keep sampleRate.
+    // Probed with the channel mask SamplingLoop records with, a rate may be supported in mono only.
+    // The recorder may still resample, SamplingLoop takes the rate it actually reports.
+    void probeSampleRate() {
+        for (int rate : EXTENDED_SAMPLE_RATES) {
+            int minBytes = AudioRecord.getMinBufferSize(rate, getChannelConfig(),
+                    AudioFormat.ENCODING_PCM_16BIT);
+            if (minBytes > 0) {
+                Log.i("AnalyzerParameters", "probeSampleRate(): using " + rate + " Hz.");
+                sampleRate = rate;
+                return;
+            }
+        }
+        Log.i("AnalyzerParameters", "probeSampleRate(): no extended sample rate, using " + sampleRate + " Hz.");
+    }
+
     String getAudioSourceName() {
         return getAudioSourceNameFromId(audioSourceId);
     }
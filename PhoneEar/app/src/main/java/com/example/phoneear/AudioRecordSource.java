@@ -0,0 +1,51 @@
+package com.example.phoneear;
+
+import android.media.AudioRecord;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The microphone, an AudioSource reading an AudioRecord.
+ */
+class AudioRecordSource implements AudioSource {
+    private final AudioRecord record;
+
+    AudioRecordSource(AudioRecord record) {
+        this.record = record;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return record.getSampleRate();
+    }
+
+    @Override
+    public int getChannelCount() {
+        return record.getChannelCount();
+    }
+
+    @Override
+    public void startRecording() {
+        record.startRecording();
+    }
+
+    @Override
+    public int read(short[] audioData, int offsetInShorts, int sizeInShorts) {
+        return record.read(audioData, offsetInShorts, sizeInShorts);
+    }
+
+    @Override
+    public int read(ByteBuffer audioBuffer, int sizeInBytes) {
+        return record.read(audioBuffer, sizeInBytes);
+    }
+
+    @Override
+    public void stop() {
+        record.stop();
+    }
+
+    @Override
+    public void release() {
+        record.release();
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.phoneear;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Where the samples come from: the microphone (AudioRecordSource) or a recording (FileAudioSource).
+ * 16 bit PCM, the channels interleaved. The reads follow AudioRecord: the number of
+ * samples (shorts) or bytes read, or a negative error code.
+ */
+interface AudioSource {
+    int getSampleRate();
+
+    int getChannelCount();
+
+    // throws IllegalStateException if the source can not be started
+    void startRecording();
+
+    int read(short[] audioData, int offsetInShorts, int sizeInShorts);
+
+    // into audioBuffer from its start, which must be a direct buffer
+    int read(ByteBuffer audioBuffer, int sizeInBytes);
+
+    void stop();
+
+    void release();
+}
@@ -0,0 +1,170 @@
+package com.example.phoneear;
+
+import android.annotation.TargetApi;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+Sources:
+https://docs.oracle.com/javase/7/docs/api/java/util/concurrent/ForkJoinPool.html
+https://docs.oracle.com/javase/tutorial/essential/concurrency/forkjoin.html
+ */
+
+/**
+ * Decodes the WAV recordings of a directory tree in parallel, e.g. field recordings of many rooms.
+ * Every recording is memory-mapped (FileAudioSource) and analysed by its own AnalysisPipeline in a
+ * task of a ForkJoinPool, as fast as the CPU allows; the recordings share nothing but the FFT plans
+ * of ShortTimeFT, so the throughput grows with the number of cores.
+ *
+ * For every recording a result file NAME.decoded.txt is written:
+ *   # file, sample rate, channels, duration and decoding time
+ *   one line per message: time in seconds, valid or invalid, message
+ *
+ * Each task runs the pipeline on one thread: no STFT or channel workers (the channels of a stereo
+ * recording are analysed one after the other), no ParallelDecoder (its workers would drop spectra
+ * that come faster than real time) and no CPU governor. A recording that fails, e.g. a broken WAV
+ * header, is logged and does not stop the others.
+ *
+ * The command line tool is BatchDecoderTool of the unit tests.
+ */
+@TargetApi(21)   // ForkJoinPool: off the device, or Android 5.0 and later
+class BatchDecoder {
+    private static final String TAG = "BatchDecoder";
+    static final String RESULT_SUFFIX = ".decoded.txt";
+    private static final int CHUNK_FRAMES = 2048;   // at most readChunkSize of SamplingLoop
+
+    private final AnalyzerParameters analyzerParam;
+    private final ForkJoinPool pool;
+
+    BatchDecoder(AnalyzerParameters analyzerParam, int parallelism) {
+        this.analyzerParam = analyzerParam;
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    // All *.wav files below dir, sorted.
+    static List<File> findRecordings(File dir) {
+        List<File> recordings = new ArrayList<>();
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return recordings;
+        }
+        Arrays.sort(files);
+        for (File f : files) {
+            if (f.isDirectory()) {
+                recordings.addAll(findRecordings(f));
+            } else if (f.getName().toLowerCase(Locale.US).endsWith(".wav")) {
+                recordings.add(f);
+            }
+        }
+        return recordings;
+    }
+
+    // Decodes all recordings below dir into outDir (next to the recordings if outDir is null).
+    // Returns the number of recordings decoded, the others are logged.
+    int decodeDirectory(File dir, File outDir) {
+        List<File> recordings = findRecordings(dir);
+        final List<DecodeTask> tasks = new ArrayList<>(recordings.size());
+        for (File recording : recordings) {
+            File result;
+            if (outDir == null) {
+                result = new File(recording.getPath() + RESULT_SUFFIX);
+            } else {
+                // the path below dir in the name, recordings of different rooms may have the same name
+                String relative = recording.getPath().substring(dir.getPath().length() + 1);
+                result = new File(outDir, relative.replace(File.separatorChar, '_') + RESULT_SUFFIX);
+            }
+            tasks.add(new DecodeTask(recording, result));
+        }
+        long start = System.nanoTime();
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+
+        int nDecoded = 0;
+        double audioSeconds = 0;
+        for (DecodeTask task : tasks) {
+            if (task.error == null) {
+                nDecoded++;
+                audioSeconds += task.audioSeconds;
+            } else {
+                Log.e(TAG, "BatchDecoder::decodeDirectory(): " + task.recording + ": " + task.error.getMessage());
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Log.i(TAG, String.format(Locale.US, "BatchDecoder::decodeDirectory(): %d of %d recordings, %.0f s of audio"
+                + " in %.1f s on %d threads", nDecoded, tasks.size(), audioSeconds, seconds, pool.getParallelism()));
+        return nDecoded;
+    }
+
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    private class DecodeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final File recording;
+        final File result;
+        Exception error;
+        double audioSeconds;
+
+        DecodeTask(File recording, File result) {
+            this.recording = recording;
+            this.result = result;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                String text = decode();
+                Writer out = new OutputStreamWriter(new FileOutputStream(result), "UTF-8");
+                try {
+                    out.write(text);
+                } finally {
+                    out.close();
+                }
+            } catch (IOException | RuntimeException e) {
+                // only this recording failed, invokeAll() must not see it
+                error = e;
+            }
+        }
+
+        private String decode() throws IOException {
+            long start = System.nanoTime();
+            FileAudioSource source = new FileAudioSource(recording, false);
+            AnalyzerParameters param = analyzerParam.copy();
+            param.sampleRate = source.getSampleRate();
+            param.stftThreads = 1;
+            param.channelThreads = false;
+            param.parallelDecoders = 0;
+            param.cpuBudget = 0;
+            int nChannels = source.getChannelCount();
+
+            MessageCollector collector = new MessageCollector(param, nChannels);
+            collector.decode(source.samples(), CHUNK_FRAMES);
+
+            audioSeconds = (double) source.getFrames() / param.sampleRate;
+            StringBuilder text = new StringBuilder(String.format(Locale.US, "# %s %d Hz %d ch %.1f s, decoded in %.0f ms\n",
+                    recording.getName(), param.sampleRate, nChannels, audioSeconds, (System.nanoTime() - start) / 1e6));
+            for (MessageCollector.Message message : collector.getMessages()) {
+                text.append(String.format(Locale.US, "%.2f\t%s\t%s\n",
+                        message.seconds, message.valid ? "valid" : "invalid", message.text));
+            }
+            return text.toString();
+        }
+    }
+}
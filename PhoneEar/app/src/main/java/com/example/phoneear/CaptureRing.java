@@ -0,0 +1,154 @@
+package com.example.phoneear;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/*
+Sources:
+https://developer.android.com/reference/android/media/AudioRecord#read(java.nio.ByteBuffer,%20int)
+https://www.linuxjournal.com/content/lock-free-multi-producer-multi-consumer-queue-ring-buffer
+https://psy-lob-saw.blogspot.com/2014/04/notes-on-concurrent-ring-buffer-queue.html
+ */
+
+/**
+ * Single-producer/single-consumer ring of samples between the capture thread, which only
+ * reads from AudioRecord, and the DSP thread, which runs the STFT and the decoder.
+ * The producer reads straight into the ring and the consumer feeds the STFT straight from
+ * it, so the samples are not copied in between.
+ * Only the producer changes writePos and only the consumer changes readPos, both are
+ * volatile, so no lock is needed and the capture never waits for the analysis.
+ * If the analysis falls so far behind that the ring is full, the producer drops the new
+ * samples and counts them as overrun.
+ *
+ * The ring is either a short[] or a direct ByteBuffer. AudioRecord reads into a direct buffer
+ * natively, without the copy into a Java array, and the STFT reads it through a ShortBuffer view.
+ * AudioRecord.read(ByteBuffer, int) always writes at the start of the buffer, so the producer
+ * gets a slice that starts at writeOffset() (see writeBuffer()).
+ */
+class CaptureRing {
+    private static final int SLICE_GRANULE = 256;   // slices at multiples of this offset are cached
+
+    private final short[] buffer;                  // null for a direct ring
+    private final ByteBuffer directBytes;          // null for an array ring
+    private final ShortBuffer directSamples;
+    private final ByteBuffer[] slices;             // slices of directBytes at offset i * SLICE_GRANULE
+    private final int capacity;
+    private final int mask;
+    private volatile long writePos;    // samples written so far
+    private volatile long readPos;     // samples consumed so far
+    private volatile long nOverrun;    // samples dropped because the ring was full
+
+    CaptureRing(int minCapacity) {
+        this(minCapacity, false);
+    }
+
+    // capacity is rounded up to a power of 2
+    CaptureRing(int minCapacity, boolean direct) {
+        if (minCapacity < 1 || minCapacity > (1 << 29)) {
+            throw new IllegalArgumentException("CaptureRing(): capacity must be between 1 and 2^29.");
+        }
+        int capacity = Integer.highestOneBit(minCapacity);
+        if (capacity < minCapacity) {
+            capacity <<= 1;
+        }
+        this.capacity = capacity;
+        mask = capacity - 1;
+        if (direct) {
+            buffer = null;
+            // AudioRecord writes 16 bit samples in the native byte order
+            directBytes = ByteBuffer.allocateDirect(2 * capacity).order(ByteOrder.nativeOrder());
+            directSamples = directBytes.asShortBuffer();
+            slices = new ByteBuffer[(capacity + SLICE_GRANULE - 1) / SLICE_GRANULE];
+        } else {
+            buffer = new short[capacity];
+            directBytes = null;
+            directSamples = null;
+            slices = null;
+        }
+    }
+
+    boolean isDirect() {
+        return directBytes != null;
+    }
+
+    // The backing array of an array ring, write at writeOffset() or read at readOffset().
+    short[] array() {
+        return buffer;
+    }
+
+    // The samples of a direct ring, read at readOffset() with absolute get().
+    ShortBuffer samples() {
+        return directSamples;
+    }
+
+    // Direct ring: the bytes from writeOffset() to the end of the ring, to read the recorder into.
+    ByteBuffer writeBuffer() {
+        int offset = writeOffset();
+        if (offset % SLICE_GRANULE == 0) {
+            ByteBuffer slice = slices[offset / SLICE_GRANULE];
+            if (slice == null) {
+                slice = slice(offset);
+                slices[offset / SLICE_GRANULE] = slice;
+            }
+            return slice;
+        }
+        return slice(offset);   // only after a short read
+    }
+
+    private ByteBuffer slice(int offset) {
+        ByteBuffer b = directBytes.duplicate();
+        b.position(2 * offset);
+        return b.slice();
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    // producer: contiguous free space at writeOffset()
+    int writable() {
+        long w = writePos;
+        int free = capacity - (int) (w - readPos);
+        return Math.min(free, capacity - (int) (w & mask));
+    }
+
+    int writeOffset() {
+        return (int) (writePos & mask);
+    }
+
+    // producer: n samples were written at writeOffset()
+    void commit(int n) {
+        writePos = writePos + n;
+    }
+
+    // producer: n samples were dropped
+    void overrun(int n) {
+        nOverrun = nOverrun + n;
+    }
+
+    // consumer: contiguous samples available at readOffset()
+    int readable() {
+        long r = readPos;
+        int available = (int) (writePos - r);
+        return Math.min(available, capacity - (int) (r & mask));
+    }
+
+    // consumer: all samples not consumed yet, contiguous or not
+    int available() {
+        return (int) (writePos - readPos);
+    }
+
+    int readOffset() {
+        return (int) (readPos & mask);
+    }
+
+    // consumer: n samples at readOffset() are done with
+    void release(int n) {
+        readPos = readPos + n;
+    }
+
+    long getOverrunSamples() {
+        return nOverrun;
+    }
+}
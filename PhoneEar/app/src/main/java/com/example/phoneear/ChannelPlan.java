@@ -0,0 +1,214 @@
+package com.example.phoneear;
+
+import java.util.Locale;
+
+/**
+ * Carrier frequencies of the protocol and where they are in the spectrum.
+ * Computed once from the actual sample rate and fftLen, so the detector and the
+ * visualization read the right bins at 44.1 kHz, 48 kHz or with a smaller FFT.
+ *
+ * Carrier 0 is the phase signal, carrier 1 the starting signal, the last carrier the
+ * ending signal and the carriers in between carry the data (digits 0 to 9 by default).
+ * A carrier that lies between two bins is read as the linear interpolation of both.
+ *
+ * The plan can be corrected for the clock offset of transmitter and receiver, see corrected()
+ * and FrequencyTracker.
+ *
+ * At 48 kHz and more the extended plan spreads more carriers over a wider band above
+ * 20 kHz, see extended().
+ */
+class ChannelPlan {
+    static final int PHASE = 0;
+    static final int START = 1;
+    static final int FIRST_DATA = 2;
+
+    // 17.0 kHz phase, 17.8 kHz start, 18.0 kHz to 19.8 kHz digits 0 to 9, 20.0 kHz end
+    static final double[] DEFAULT_CARRIERS_HZ = {
+            17000, 17800, 18000, 18200, 18400, 18600, 18800, 19000, 19200, 19400, 19600, 19800, 20000};
+    // comparison frequencies 15.8 kHz to 16.8 kHz
+    static final double[] DEFAULT_REFERENCES_HZ = {15800, 16000, 16200, 16400, 16600, 16800};
+
+    // extended plan: carriers from 17.0 kHz on, at least 3 bins apart
+    static final double EXTENDED_BASE_HZ = 17000;
+    static final double EXTENDED_MAX_HZ = 28000;   // microphones hardly pick up more
+    static final int MAX_DATA_CARRIERS = 16;       // limit of MultiToneCode
+
+    private final int sampleRate;
+    private final int fftLen;
+    private final double[] carrierHz;       // nominal frequencies
+    private final double[] referenceHz;
+    private final double scale;             // received / nominal carrier frequency
+    private final double sampleRateReal;    // measured sample rate the spectrum is binned with
+    private final int[] carrierBin;         // lower of the two bins around the carrier
+    private final double[] carrierWeight;   // weight of the upper bin
+    private final int[] referenceBin;
+    private final String[] labels;
+
+    ChannelPlan(double[] carrierHz, double[] referenceHz, int sampleRate, int fftLen) {
+        this(carrierHz, referenceHz, sampleRate, fftLen, 1, sampleRate);
+    }
+
+    private ChannelPlan(double[] carrierHz, double[] referenceHz, int sampleRate, int fftLen,
+                        double scale, double sampleRateReal) {
+        if (carrierHz.length < FIRST_DATA + 2) {
+            throw new IllegalArgumentException("ChannelPlan(): need phase, start, end and at least one data carrier.");
+        }
+        this.sampleRate = sampleRate;
+        this.fftLen = fftLen;
+        this.carrierHz = carrierHz.clone();
+        this.referenceHz = referenceHz.clone();
+        this.scale = scale;
+        this.sampleRateReal = sampleRateReal;
+        carrierBin = new int[carrierHz.length];
+        carrierWeight = new double[carrierHz.length];
+        referenceBin = new int[referenceHz.length];
+        labels = new String[carrierHz.length];
+
+        for (int i = 0; i < carrierHz.length; i++) {
+            double bin = checkedBin(carrierHz[i] * scale);
+            carrierBin[i] = (int) Math.floor(bin);
+            carrierWeight[i] = bin - carrierBin[i];
+        }
+        for (int i = 0; i < referenceHz.length; i++) {
+            referenceBin[i] = (int) Math.round(checkedBin(referenceHz[i]));
+        }
+
+        for (int i = 0; i < carrierHz.length; i++) {
+            String symbol;
+            if (i == PHASE) {
+                labels[i] = "Phase       ";
+                continue;
+            } else if (i == START) {
+                symbol = "[";
+            } else if (i == getEnd()) {
+                symbol = "]";
+            } else {
+                symbol = Integer.toString(i - FIRST_DATA);
+            }
+            labels[i] = String.format(Locale.US, "%.1f kHz (%s)", carrierHz[i] / 1000, symbol);
+        }
+    }
+
+    // Carriers for the sample rate and FFT length of the analyzer.
+    static ChannelPlan create(AnalyzerParameters analyzerParam) {
+        if (analyzerParam.extendedBand && analyzerParam.sampleRate >= 48000) {
+            return extended(analyzerParam.sampleRate, analyzerParam.fftLen);
+        }
+        return new ChannelPlan(DEFAULT_CARRIERS_HZ, DEFAULT_REFERENCES_HZ, analyzerParam.sampleRate, analyzerParam.fftLen);
+    }
+
+    // Evenly spaced phase, start, data and end carriers from EXTENDED_BASE_HZ up to 0.47 * sampleRate
+    // (below the anti-aliasing filter) or EXTENDED_MAX_HZ. The spacing is at least 3 bins in steps of 100 Hz,
+    // e.g. 300 Hz and 16 data carriers up to 22.4 kHz at 48 kHz, 600 Hz up to 27.8 kHz at 96 kHz.
+    static ChannelPlan extended(int sampleRate, int fftLen) {
+        double spacing = Math.ceil(3.0 * sampleRate / fftLen / 100) * 100;
+        double maxHz = Math.min(0.47 * sampleRate, EXTENDED_MAX_HZ);
+        int nData = Math.min((int) ((maxHz - EXTENDED_BASE_HZ) / spacing) - 2, MAX_DATA_CARRIERS);
+        if (nData < 1) {
+            throw new IllegalArgumentException("ChannelPlan.extended(): no room for data carriers at " + sampleRate + " Hz.");
+        }
+        double[] carrierHz = new double[nData + 3];
+        for (int i = 0; i < carrierHz.length; i++) {
+            carrierHz[i] = EXTENDED_BASE_HZ + i * spacing;
+        }
+        return new ChannelPlan(carrierHz, DEFAULT_REFERENCES_HZ, sampleRate, fftLen);
+    }
+
+    // The same carriers received with all frequencies times scale (clock offset of the transmitter)
+    // and binned at the measured sample rate of the recorder.
+    ChannelPlan corrected(double scale, double sampleRateReal) {
+        return new ChannelPlan(carrierHz, referenceHz, sampleRate, fftLen, scale, sampleRateReal);
+    }
+
+    private double checkedBin(double hz) {
+        double bin = hz * fftLen / sampleRateReal;
+        if (bin < 1 || bin >= fftLen / 2) {
+            throw new IllegalArgumentException(String.format(Locale.US,
+                    "ChannelPlan(): %.0f Hz is outside the spectrum at sample rate %d Hz.", hz, sampleRate));
+        }
+        return bin;
+    }
+
+    int size() {
+        return carrierHz.length;
+    }
+
+    // index of the ending signal
+    int getEnd() {
+        return carrierHz.length - 1;
+    }
+
+    int getDataCarriers() {
+        return carrierHz.length - FIRST_DATA - 1;
+    }
+
+    int getSampleRate() {
+        return sampleRate;
+    }
+
+    int getFftLen() {
+        return fftLen;
+    }
+
+    double getBinWidth() {
+        return sampleRateReal / fftLen;
+    }
+
+    double getScale() {
+        return scale;
+    }
+
+    double getSampleRateReal() {
+        return sampleRateReal;
+    }
+
+    // nominal frequency
+    double getCarrierFrequency(int carrier) {
+        return carrierHz[carrier];
+    }
+
+    // nearest bin, e.g. for drawing
+    int getCarrierBin(int carrier) {
+        return carrierBin[carrier] + (carrierWeight[carrier] >= 0.5 ? 1 : 0);
+    }
+
+    int getReferences() {
+        return referenceHz.length;
+    }
+
+    double getReferenceFrequency(int reference) {
+        return referenceHz[reference];
+    }
+
+    String getLabel(int carrier) {
+        return labels[carrier];
+    }
+
+    // Smallest distance between two carriers in bins, below 1 the carriers can not be told apart.
+    double getMinSpacingBins() {
+        double min = Double.MAX_VALUE;
+        for (int i = 1; i < carrierHz.length; i++) {
+            min = Math.min(min, Math.abs(carrierHz[i] - carrierHz[i-1]) * scale / getBinWidth());
+        }
+        return min;
+    }
+
+    // Level of the carrier in dB.
+    double carrierLevel(double[] spectrumDB, int carrier) {
+        int bin = carrierBin[carrier];
+        double w = carrierWeight[carrier];
+        if (w == 0) {
+            return spectrumDB[bin];   // also avoids 0 * -Infinity for silent bins
+        }
+        return (1 - w) * spectrumDB[bin] + w * spectrumDB[bin + 1];
+    }
+
+    // Mean level of the comparison frequencies in dB.
+    double referenceLevel(double[] spectrumDB) {
+        double sum = 0;
+        for (int bin : referenceBin) {
+            sum += spectrumDB[bin];
+        }
+        return sum / referenceBin.length;
+    }
+}
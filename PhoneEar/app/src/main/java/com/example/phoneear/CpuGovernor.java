@@ -0,0 +1,106 @@
+package com.example.phoneear;
+
+/**
+ * Keeps the analysis within a CPU budget by stepping between quality levels of the STFT.
+ * The level sets the hop length: twice the FFT length (half of the samples are skipped,
+ * the old default of 1024 with fftLen 512), the FFT length (every sample is used once) or
+ * half of it (50 % overlap). The number of averaged FFTs is scaled so that a spectrum still
+ * comes every hopLen * nFFTAverage samples, the timing of the detector does not change.
+ * Higher levels average more FFTs, which lowers the variance of the noise in the spectrum.
+ *
+ * The load is the processing time of the DSP thread per second of audio, measured over
+ * windows of one second. One window over budget, or the capture ring filling up (at most
+ * every 250 ms), steps down at once; CALM_WINDOWS windows in a row below a third of the budget step up,
+ * since one level up doubles the number of FFTs.
+ */
+class CpuGovernor {
+    private static final double[] HOP_OF_FFT = {2, 1, 0.5};   // hopLen / fftLen per level
+    static final int CALM_WINDOWS = 3;
+
+    private final int fftLen;
+    private final int spectrumPeriod;       // hopLen * nFFTAverage in samples
+    private final int sampleRate;
+    private final double budget;            // fraction of one core
+    private int level;
+
+    private long windowNanos;
+    private long windowSamples;
+    private int nCalm;
+    private double lastLoad;
+
+    CpuGovernor(int fftLen, int hopLen, int nFFTAverage, int sampleRate, double budget) {
+        if (budget <= 0 || budget > 1) {
+            throw new IllegalArgumentException("CpuGovernor(): budget must be between 0 and 1 core.");
+        }
+        this.fftLen = fftLen;
+        this.spectrumPeriod = hopLen * nFFTAverage;
+        this.sampleRate = sampleRate;
+        this.budget = budget;
+        // start at the configured level, or the lowest one
+        for (int i = 0; i < HOP_OF_FFT.length; i++) {
+            if (getHopLen(i) == hopLen) {
+                level = i;
+            }
+        }
+    }
+
+    int getLevel() {
+        return level;
+    }
+
+    int getLevels() {
+        return HOP_OF_FFT.length;
+    }
+
+    double getLastLoad() {
+        return lastLoad;
+    }
+
+    int getHopLen() {
+        return getHopLen(level);
+    }
+
+    int getFFTAverage() {
+        return Math.max(spectrumPeriod / getHopLen(), 1);
+    }
+
+    private int getHopLen(int level) {
+        return (int) (fftLen * HOP_OF_FFT[level]);
+    }
+
+    // Called after every chunk the DSP thread analysed; returns true if the level changed.
+    boolean update(long processingNanos, int nSamples, boolean fallingBehind) {
+        windowNanos += processingNanos;
+        windowSamples += nSamples;
+        // the ring needs a moment to drain after a step down
+        if (fallingBehind && level > 0 && windowSamples >= sampleRate / 4) {
+            return setLevel(level - 1);
+        }
+        if (windowSamples < sampleRate) {
+            return false;
+        }
+
+        lastLoad = windowNanos / (windowSamples * 1e9 / sampleRate);
+        windowNanos = 0;
+        windowSamples = 0;
+        if (lastLoad > budget && level > 0) {
+            return setLevel(level - 1);
+        }
+        if (lastLoad < budget / 3 && level < HOP_OF_FFT.length - 1) {
+            if (++nCalm >= CALM_WINDOWS) {
+                return setLevel(level + 1);
+            }
+        } else {
+            nCalm = 0;
+        }
+        return false;
+    }
+
+    private boolean setLevel(int level) {
+        this.level = level;
+        nCalm = 0;
+        windowNanos = 0;
+        windowSamples = 0;
+        return true;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.phoneear;
+
+import java.util.Locale;
+
+/**
+ * Thresholds of the SymbolDetector. The best values depend on room and device,
+ * ParallelDecoder runs several of them at the same time.
+ */
+class DetectorConfig {
+    double thresholdFactor = 0.9;   // hard decision: carrier must exceed comparison level * thresholdFactor
+    int votesNeeded = 4;            // hard decision: measurements per window a carrier must be the maximum
+    boolean softDecision = false;   // maximum likelihood decision per symbol window instead of the votes
+    double softMinSnrDB = 10;       // soft decision: minimum mean SNR of a symbol
+    double softMinConfidenceDB = 3; // soft decision: minimum margin to the second best symbol, else erasure
+    boolean adaptiveNoiseFloor = false;  // SNR against the running floor of every carrier (NoiseFloor)
+                                         // instead of the comparison band
+    double minSnrDB = 10;           // hard decision with adaptive noise floor: SNR the strongest carrier must exceed
+    boolean trackFrequency = false; // follow the carrier offset of the transmitter, see FrequencyTracker
+
+    DetectorConfig copy() {
+        DetectorConfig c = new DetectorConfig();
+        c.thresholdFactor = thresholdFactor;
+        c.votesNeeded = votesNeeded;
+        c.softDecision = softDecision;
+        c.softMinSnrDB = softMinSnrDB;
+        c.softMinConfidenceDB = softMinConfidenceDB;
+        c.adaptiveNoiseFloor = adaptiveNoiseFloor;
+        c.minSnrDB = minSnrDB;
+        c.trackFrequency = trackFrequency;
+        return c;
+    }
+
+    static final int MAX_VARIANTS = 6;
+
+    // The configured detector first, then up to MAX_VARIANTS - 1 variants around it.
+    static DetectorConfig[] variants(DetectorConfig base, int n) {
+        DetectorConfig[] configs = new DetectorConfig[Math.min(n, MAX_VARIANTS)];
+        for (int i = 0; i < configs.length; i++) {
+            DetectorConfig c = base.copy();
+            switch (i) {
+                case 0:
+                    break;
+                case 1:   // the other decision rule
+                    c.softDecision = ! base.softDecision;
+                    break;
+                case 2:   // more sensitive (levels are negative dB, a larger factor is a lower threshold)
+                    c.thresholdFactor = base.thresholdFactor + 0.05;
+                    c.minSnrDB = base.minSnrDB - 4;
+                    c.votesNeeded = Math.max(base.votesNeeded - 1, 2);
+                    c.softMinSnrDB = base.softMinSnrDB - 4;
+                    break;
+                case 3:   // more strict
+                    c.thresholdFactor = base.thresholdFactor - 0.05;
+                    c.minSnrDB = base.minSnrDB + 4;
+                    c.votesNeeded = base.votesNeeded + 1;
+                    c.softMinSnrDB = base.softMinSnrDB + 4;
+                    break;
+                case 4:   // soft decision that erases less
+                    c.softDecision = true;
+                    c.softMinConfidenceDB = base.softMinConfidenceDB / 2;
+                    break;
+                case 5:   // sensitive soft decision
+                    c.softDecision = true;
+                    c.softMinSnrDB = base.softMinSnrDB - 4;
+                    c.softMinConfidenceDB = base.softMinConfidenceDB / 2;
+                    break;
+            }
+            configs[i] = c;
+        }
+        return configs;
+    }
+
+    @Override
+    public String toString() {
+        String noise = adaptiveNoiseFloor ? ", noise floor" : "";
+        if (softDecision) {
+            return String.format(Locale.US, "soft(snr %.0f dB, conf %.1f dB%s)", softMinSnrDB, softMinConfidenceDB, noise);
+        } else if (adaptiveNoiseFloor) {
+            return String.format(Locale.US, "hard(snr %.0f dB, %d votes%s)", minSnrDB, votesNeeded, noise);
+        }
+        return String.format(Locale.US, "hard(%.2f, %d votes)", thresholdFactor, votesNeeded);
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.phoneear;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+Sources:
+http://soundfile.sapp.org/doc/WaveFormat/
+https://docs.oracle.com/javase/7/docs/api/java/nio/channels/FileChannel.html#map(java.nio.channels.FileChannel.MapMode,%20long,%20long)
+ */
+
+/**
+ * A recording as AudioSource: a 16 bit PCM WAV file or a raw little endian PCM file,
+ * memory-mapped read-only, so the samples are not copied into the Java heap.
+ *
+ * samples() is the whole recording as ShortBuffer; the STFT reads it in place, see
+ * MessageCollector, which decodes a recording at many times real time.
+ * read() serves it like a recorder, with realTime no faster than the sample rate, so
+ * SamplingLoop can replay a recording (AnalyzerParameters.inputFile).
+ */
+class FileAudioSource implements AudioSource {
+    private final String name;
+    private final int sampleRate;
+    private final int nChannels;
+    private final ShortBuffer samples;   // little endian view of the mapped data
+    private final boolean realTime;
+
+    private int readPosition;            // in samples
+    private long startNanos;
+
+    // WAV file, format and sample rate from its header
+    FileAudioSource(File file, boolean realTime) throws IOException {
+        this(file, 0, 0, realTime);
+    }
+
+    // Raw PCM file of 16 bit little endian samples, nChannels interleaved.
+    FileAudioSource(File file, int sampleRate, int nChannels, boolean realTime) throws IOException {
+        name = file.getName();
+        this.realTime = realTime;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        MappedByteBuffer map;
+        try {
+            // the mapping stays valid after the channel is closed
+            map = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+        map.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (sampleRate == 0) {
+            int[] format = parseWav(map);   // leaves position and limit around the data chunk
+            this.nChannels = format[0];
+            this.sampleRate = format[1];
+        } else {
+            if (nChannels < 1 || sampleRate < 1) {
+                throw new IllegalArgumentException("FileAudioSource(): " + nChannels + " channels at " + sampleRate + " Hz.");
+            }
+            this.nChannels = nChannels;
+            this.sampleRate = sampleRate;
+        }
+        ByteBuffer data = map.slice().order(ByteOrder.LITTLE_ENDIAN);
+        // whole frames only
+        data.limit(data.limit() - data.limit() % (2 * this.nChannels));
+        samples = data.asShortBuffer();
+    }
+
+    // Returns {channels, sample rate} and sets position and limit of map to the samples.
+    private int[] parseWav(ByteBuffer map) throws IOException {
+        if (map.remaining() < 12 || map.getInt(0) != 0x46464952 || map.getInt(8) != 0x45564157) {   // "RIFF", "WAVE"
+            throw new IOException("FileAudioSource: " + name + " is not a WAV file.");
+        }
+        int[] format = null;
+        int pos = 12;
+        while (pos + 8 <= map.limit()) {
+            int id = map.getInt(pos);
+            long size = map.getInt(pos + 4) & 0xffffffffL;
+            int body = pos + 8;
+            if (id == 0x20746d66) {          // "fmt "
+                int audioFormat = map.getShort(body) & 0xffff;
+                int bitsPerSample = map.getShort(body + 14);
+                // 0xfffe: WAVE_FORMAT_EXTENSIBLE, as written by many recorders for PCM as well
+                if ((audioFormat != 1 && audioFormat != 0xfffe) || bitsPerSample != 16) {
+                    throw new IOException("FileAudioSource: " + name + " is not 16 bit PCM.");
+                }
+                format = new int[]{map.getShort(body + 2), map.getInt(body + 4)};
+            } else if (id == 0x61746164) {   // "data"
+                if (format == null) {
+                    throw new IOException("FileAudioSource: " + name + " has no fmt chunk before the data.");
+                }
+                // the size is often wrong in files of an interrupted recording
+                map.limit((int) Math.min(body + size, map.limit()));
+                map.position(body);
+                return format;
+            }
+            pos = (int) Math.min(body + size + (size & 1), Integer.MAX_VALUE);   // chunks are word aligned
+        }
+        throw new IOException("FileAudioSource: " + name + " has no data chunk.");
+    }
+
+    // All samples, channels interleaved. Position and limit of the view may be changed.
+    ShortBuffer samples() {
+        return samples.duplicate();
+    }
+
+    // number of frames, one sample of every channel
+    int getFrames() {
+        return samples.limit() / nChannels;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int getChannelCount() {
+        return nChannels;
+    }
+
+    @Override
+    public void startRecording() {
+        readPosition = 0;
+        startNanos = System.nanoTime();
+    }
+
+    // 0 at the end of the recording
+    @Override
+    public int read(short[] audioData, int offsetInShorts, int sizeInShorts) {
+        int n = prepareRead(sizeInShorts);
+        for (int i = 0; i < n; i++) {
+            audioData[offsetInShorts + i] = samples.get(readPosition + i);
+        }
+        readPosition += n;
+        return n;
+    }
+
+    @Override
+    public int read(ByteBuffer audioBuffer, int sizeInBytes) {
+        int n = prepareRead(sizeInBytes / 2);
+        ShortBuffer out = audioBuffer.duplicate().order(ByteOrder.nativeOrder()).asShortBuffer();
+        for (int i = 0; i < n; i++) {
+            out.put(i, samples.get(readPosition + i));
+        }
+        readPosition += n;
+        return 2 * n;
+    }
+
+    // Number of samples the next read returns; with realTime waits until they are due.
+    private int prepareRead(int size) {
+        size -= size % nChannels;
+        int n = Math.min(size, samples.limit() - readPosition);
+        if (realTime) {
+            // at the end wait as long as for a full read, like a silent recorder
+            long due = startNanos + (long) ((readPosition + size) / nChannels * 1e9 / sampleRate);
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (n == 0) {
+                startNanos += (long) (size / nChannels * 1e9 / sampleRate);
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public void release() {
+        // the mapping is released with the buffer by the garbage collector
+    }
+}
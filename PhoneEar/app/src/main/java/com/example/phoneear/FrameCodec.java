@@ -0,0 +1,186 @@
+package com.example.phoneear;
+
+import java.util.Arrays;
+
+/*
+Sources:
+https://en.wikipedia.org/wiki/Cyclic_redundancy_check
+http://srecord.sourceforge.net/crc16-ccitt.html
+ */
+
+/**
+ * Binary framing on top of the multi-tone symbols.
+ * A frame is [length][payload bytes][CRC-16 high][CRC-16 low]. Its bits, most significant first,
+ * are packed into symbols of floor(log2(code words)) bits, 6 bits with the 120 code words of
+ * 3 of 10 carriers; the last symbol is padded with zeros. So a byte costs 8/6 symbols instead of
+ * the two of a nibble per symbol. Because of the length prefix the receiver knows when the last
+ * symbol arrived and can check the CRC right away, without waiting for the end signal.
+ * Optionally the symbols are protected by Reed-Solomon blocks over GF(2^bits) (see ReedSolomon),
+ * the first block is always full so that the receiver can correct the length before it is used.
+ */
+class FrameCodec {
+    static final int MAX_PAYLOAD = 255;
+    static final int OVERHEAD_BYTES = 3;    // length byte and two CRC bytes
+
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        // CRC-16/CCITT-FALSE: polynomial 0x1021, initial value 0xFFFF
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 8;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            CRC_TABLE[i] = crc & 0xFFFF;
+        }
+    }
+
+    private final int bitsPerSymbol;
+    private final int[] symbolOfCodeWord;   // -1 for code words that carry no symbol
+    private final int[] codeWordOfSymbol;
+
+    FrameCodec(MultiToneCode code) {
+        if (code.size() < 1 << ReedSolomon.MIN_BITS) {
+            throw new IllegalArgumentException("FrameCodec(): multi-tone code needs at least "
+                    + (1 << ReedSolomon.MIN_BITS) + " code words.");
+        }
+        int bits = ReedSolomon.MIN_BITS;
+        while (bits < ReedSolomon.MAX_BITS && code.size() >= 1 << (bits + 1)) {
+            bits++;
+        }
+        bitsPerSymbol = bits;
+        int nSymbols = 1 << bits;
+        codeWordOfSymbol = new int[nSymbols];
+        symbolOfCodeWord = new int[code.size()];
+        Arrays.fill(symbolOfCodeWord, -1);
+
+        // Choose the code words greedily so that they share as few carriers as possible,
+        // then a single wrong carrier rarely turns one used code word into another.
+        int chosen = 0;
+        for (int maxShared = 1; chosen < nSymbols; maxShared++) {
+            for (int v = 0; v < code.size() && chosen < nSymbols; v++) {
+                if (symbolOfCodeWord[v] >= 0) {
+                    continue;
+                }
+                boolean fits = true;
+                for (int n = 0; n < chosen; n++) {
+                    if (Integer.bitCount(code.maskOf(v) & code.maskOf(codeWordOfSymbol[n])) > maxShared) {
+                        fits = false;
+                        break;
+                    }
+                }
+                if (fits) {
+                    symbolOfCodeWord[v] = chosen;
+                    codeWordOfSymbol[chosen++] = v;
+                }
+            }
+        }
+    }
+
+    int getBitsPerSymbol() {
+        return bitsPerSymbol;
+    }
+
+    // Symbol carried by a multi-tone code word, -1 if the code word is not used.
+    int symbolOf(int codeWord) {
+        if (codeWord < 0 || codeWord >= symbolOfCodeWord.length) {
+            return -1;
+        }
+        return symbolOfCodeWord[codeWord];
+    }
+
+    int codeWordOf(int symbol) {
+        return codeWordOfSymbol[symbol];
+    }
+
+    static int crc16(byte[] data, int offset, int length) {
+        int crc = 0xFFFF;
+        for (int i = offset; i < offset + length; i++) {
+            crc = ((crc << 8) ^ CRC_TABLE[((crc >> 8) ^ data[i]) & 0xFF]) & 0xFFFF;
+        }
+        return crc;
+    }
+
+    // Number of symbols of a frame with the given payload length.
+    static int frameSymbols(int payloadLength, int bitsPerSymbol) {
+        return (8 * (payloadLength + OVERHEAD_BYTES) + bitsPerSymbol - 1) / bitsPerSymbol;
+    }
+
+    // Number of symbols that hold the length byte.
+    static int lengthSymbols(int bitsPerSymbol) {
+        return (8 + bitsPerSymbol - 1) / bitsPerSymbol;
+    }
+
+    // Frame the payload and pack it into symbols of bitsPerSymbol bits, most significant bit first.
+    static int[] encode(byte[] payload, int offset, int length, int bitsPerSymbol) {
+        if (length > MAX_PAYLOAD) {
+            throw new IllegalArgumentException("FrameCodec::encode(): payload longer than " + MAX_PAYLOAD + " bytes.");
+        }
+        if (bitsPerSymbol < ReedSolomon.MIN_BITS || bitsPerSymbol > ReedSolomon.MAX_BITS) {
+            throw new IllegalArgumentException("FrameCodec::encode(): " + bitsPerSymbol + " bits per symbol.");
+        }
+        byte[] frame = new byte[length + OVERHEAD_BYTES];
+        frame[0] = (byte) length;
+        System.arraycopy(payload, offset, frame, 1, length);
+        int crc = crc16(frame, 0, length + 1);
+        frame[length + 1] = (byte) (crc >> 8);
+        frame[length + 2] = (byte) crc;
+
+        int[] symbols = new int[frameSymbols(length, bitsPerSymbol)];
+        int bits = 0;
+        int nBits = 0;
+        int s = 0;
+        for (byte b : frame) {
+            bits = (bits << 8) | (b & 0xFF);
+            nBits += 8;
+            while (nBits >= bitsPerSymbol) {
+                nBits -= bitsPerSymbol;
+                symbols[s++] = (bits >> nBits) & ((1 << bitsPerSymbol) - 1);
+            }
+            bits &= (1 << nBits) - 1;
+        }
+        if (nBits > 0) {
+            symbols[s] = (bits << (bitsPerSymbol - nBits)) & ((1 << bitsPerSymbol) - 1);
+        }
+        return symbols;
+    }
+
+    // Number of frame symbols in FEC block `block`. Short frames are padded with zeros to one
+    // full block, the last block of longer frames is shortened.
+    static int fecBlockData(int block, int frameSymbols, int dataPerBlock) {
+        int padded = Math.max(frameSymbols, dataPerBlock);
+        return Math.min(dataPerBlock, padded - block * dataPerBlock);
+    }
+
+    static int fecBlocks(int frameSymbols, int dataPerBlock) {
+        int padded = Math.max(frameSymbols, dataPerBlock);
+        return (padded + dataPerBlock - 1) / dataPerBlock;
+    }
+
+    // Frame the payload and append nParity Reed-Solomon parity symbols to every block.
+    static int[] encode(byte[] payload, int offset, int length, int bitsPerSymbol, int nParity) {
+        int[] frameSymbols = encode(payload, offset, length, bitsPerSymbol);
+        if (nParity == 0) {
+            return frameSymbols;
+        }
+        ReedSolomon rs = new ReedSolomon(bitsPerSymbol, nParity);
+        int dataPerBlock = rs.getDataSymbols();
+        int nBlocks = fecBlocks(frameSymbols.length, dataPerBlock);
+        int total = 0;
+        for (int b = 0; b < nBlocks; b++) {
+            total += fecBlockData(b, frameSymbols.length, dataPerBlock) + nParity;
+        }
+        int[] symbols = new int[total];
+        int in = 0;
+        int out = 0;
+        for (int b = 0; b < nBlocks; b++) {
+            int nData = fecBlockData(b, frameSymbols.length, dataPerBlock);
+            for (int i = 0; i < nData; i++, in++) {
+                symbols[out + i] = in < frameSymbols.length ? frameSymbols[in] : 0;
+            }
+            rs.encode(symbols, out, nData);
+            out += nData + nParity;
+        }
+        return symbols;
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.phoneear;
+
+/**
+ * Collects the symbols of one frame (see FrameCodec) as they arrive, unpacks their bits into
+ * bytes and validates the frame as soon as its last symbol is received.
+ * With forward error correction the symbols are collected block by block, each block is
+ * corrected (missed symbols are erasures) before its symbols are added to the frame.
+ */
+class FrameDecoder {
+    static final int INCOMPLETE = 0;
+    static final int VALID = 1;
+    static final int INVALID = 2;
+
+    private final int bitsPerSymbol;
+    private final byte[] frame = new byte[FrameCodec.MAX_PAYLOAD + FrameCodec.OVERHEAD_BYTES];
+    private int nSymbols;
+    private int nBytes;
+    private int bits;               // received bits that are no complete byte yet
+    private int nBits;
+    private int nErasures;
+    private int state;
+
+    private final ReedSolomon rs;     // null without forward error correction
+    private final int[] block = new int[ReedSolomon.MAX_BLOCK];
+    private final boolean[] erased = new boolean[ReedSolomon.MAX_BLOCK];
+    private int blockPt;
+    private int blockIndex;
+    private int nCorrected;
+
+    // nParity: Reed-Solomon parity symbols per block, 0 for no error correction
+    FrameDecoder(int bitsPerSymbol, int nParity) {
+        this.bitsPerSymbol = bitsPerSymbol;
+        rs = nParity > 0 ? new ReedSolomon(bitsPerSymbol, nParity) : null;
+        reset();
+    }
+
+    void reset() {
+        nSymbols = 0;
+        nBytes = 0;
+        bits = 0;
+        nBits = 0;
+        nErasures = 0;
+        blockPt = 0;
+        blockIndex = 0;
+        nCorrected = 0;
+        state = INCOMPLETE;
+    }
+
+    int getState() {
+        return state;
+    }
+
+    // Number of symbols of the whole frame, -1 while the length byte is not complete.
+    int expectedSymbols() {
+        return nBytes < 1 ? -1 : FrameCodec.frameSymbols(frame[0] & 0xFF, bitsPerSymbol);
+    }
+
+    int getPayloadLength() {
+        return frame[0] & 0xFF;
+    }
+
+    // Payload of a valid frame starts at offset 1.
+    byte[] getFrame() {
+        return frame;
+    }
+
+    // Number of symbols (missed or wrong) repaired by the error correction.
+    int getCorrectedSymbols() {
+        return nCorrected;
+    }
+
+    // Add the next symbol, return the state of the frame.
+    int push(int symbol) {
+        return receive(symbol, false);
+    }
+
+    // A symbol was not received, keep its place in the frame.
+    int pushErasure() {
+        return receive(0, true);
+    }
+
+    private int receive(int symbol, boolean isErased) {
+        if (state != INCOMPLETE) {
+            return state;
+        }
+        if (rs == null) {
+            if (isErased) {
+                nErasures++;
+            }
+            return addSymbol(symbol);
+        }
+
+        block[blockPt] = symbol;
+        erased[blockPt] = isErased;
+        blockPt++;
+        int nData = blockIndex == 0 ? rs.getDataSymbols()
+                : FrameCodec.fecBlockData(blockIndex, expectedSymbols(), rs.getDataSymbols());
+        if (blockPt == nData + rs.getParitySymbols()) {
+            int corrected = rs.decode(block, erased, blockPt);
+            if (corrected < 0) {
+                state = INVALID;
+                return state;
+            }
+            nCorrected += corrected;
+            for (int i = 0; i < nData && state == INCOMPLETE; i++) {
+                addSymbol(block[i]);
+            }
+            blockPt = 0;
+            blockIndex++;
+        }
+        return state;
+    }
+
+    private int addSymbol(int symbol) {
+        bits = (bits << bitsPerSymbol) | symbol;
+        nBits += bitsPerSymbol;
+        while (nBits >= 8 && nBytes < frame.length) {
+            nBits -= 8;
+            frame[nBytes++] = (byte) (bits >> nBits);
+        }
+        bits &= (1 << nBits) - 1;
+        nSymbols++;
+        if (nSymbols == FrameCodec.lengthSymbols(bitsPerSymbol) && nErasures > 0) {
+            state = INVALID;  // length unknown, the frame can not be followed
+        } else if (nSymbols == expectedSymbols()) {
+            int length = getPayloadLength();
+            int crc = ((frame[length + 1] & 0xFF) << 8) | (frame[length + 2] & 0xFF);
+            state = nErasures == 0 && crc == FrameCodec.crc16(frame, 0, length + 1) ? VALID : INVALID;
+        }
+        return state;
+    }
+}
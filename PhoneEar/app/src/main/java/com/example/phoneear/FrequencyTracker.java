@@ -0,0 +1,127 @@
+package com.example.phoneear;
+
+/*
+Sources:
+https://ccrma.stanford.edu/~jos/sasp/Quadratic_Interpolation_Spectral_Peaks.html
+ */
+
+/**
+ * Follows the carrier frequency offset between transmitter and receiver.
+ * Cheap speakers and device clocks are off by tens of Hz at 18 kHz, which moves the
+ * carriers away from the bins the detector reads. The offset of a clock is the same
+ * fraction for every frequency, so it is tracked as scale = received / nominal frequency.
+ *
+ * Whenever the phase or the starting signal is the strongest carrier, its peak is searched
+ * within MAX_OFFSET_HZ of the nominal frequency and located to a fraction of a bin by
+ * quadratic interpolation of the peak bin and its neighbours. The measurements are smoothed,
+ * so the starting signal (900 ms) locks the offset and the phase signals in between the
+ * symbols follow the drift during a message.
+ * The measured sample rate of the recorder (RecorderMonitor) is used for binning.
+ */
+class FrequencyTracker {
+    static final double MAX_OFFSET_HZ = 100;    // less than half the spacing of the default carriers
+    static final double MIN_SNR_DB = 10;        // above the comparison band, else the peak is noise
+    private static final double SMOOTHING = 0.3;
+    private static final double MIN_CHANGE_BINS = 0.05;   // smaller changes do not rebuild the plan
+
+    private final ChannelPlan nominal;
+    private ChannelPlan channelPlan;
+    private double scale = 1;
+    private volatile double sampleRateReal;
+    private int nMeasurements;
+
+    FrequencyTracker(ChannelPlan nominal) {
+        this.nominal = nominal;
+        channelPlan = nominal;
+        sampleRateReal = nominal.getSampleRate();
+    }
+
+    // Back to the nominal frequencies, e.g. after standby: the next message may come from another transmitter.
+    void reset() {
+        channelPlan = nominal;
+        scale = 1;
+        nMeasurements = 0;
+    }
+
+    // May be called from another thread, e.g. the sampling loop.
+    void setSampleRateReal(double sampleRateReal) {
+        this.sampleRateReal = sampleRateReal;
+    }
+
+    // The channel plan corrected by the current estimate.
+    ChannelPlan getChannelPlan() {
+        return channelPlan;
+    }
+
+    double getScale() {
+        return scale;
+    }
+
+    int getMeasurements() {
+        return nMeasurements;
+    }
+
+    // Offset of the starting signal in Hz, for logging.
+    double getOffsetHz() {
+        return (scale - 1) * nominal.getCarrierFrequency(ChannelPlan.START);
+    }
+
+    // Called with every measurement; returns true if the channel plan changed.
+    boolean update(double[] spectrumDB) {
+        int strongest = 0;
+        for (int i = 1; i < channelPlan.size(); i++) {
+            if (channelPlan.carrierLevel(spectrumDB, i) > channelPlan.carrierLevel(spectrumDB, strongest)) {
+                strongest = i;
+            }
+        }
+        if ((strongest == ChannelPlan.PHASE || strongest == ChannelPlan.START)
+                && channelPlan.carrierLevel(spectrumDB, strongest) - channelPlan.referenceLevel(spectrumDB) > MIN_SNR_DB) {
+            double measuredHz = peakFrequency(spectrumDB, nominal.getCarrierFrequency(strongest));
+            if (! Double.isNaN(measuredHz)) {
+                double measuredScale = measuredHz / nominal.getCarrierFrequency(strongest);
+                // the first measurement is taken as it is, later ones are smoothed
+                scale = nMeasurements == 0 ? measuredScale : scale + SMOOTHING * (measuredScale - scale);
+                nMeasurements++;
+            }
+        }
+
+        double rate = sampleRateReal;
+        double binsPerHz = nominal.getFftLen() / rate;
+        double top = nominal.getCarrierFrequency(nominal.getEnd());
+        double shiftBins = Math.abs(top * scale * binsPerHz
+                - top * channelPlan.getScale() * nominal.getFftLen() / channelPlan.getSampleRateReal());
+        if (shiftBins < MIN_CHANGE_BINS) {
+            return false;
+        }
+        channelPlan = nominal.corrected(scale, rate);
+        return true;
+    }
+
+    // Frequency of the peak within MAX_OFFSET_HZ of nominalHz, NaN if there is none.
+    private double peakFrequency(double[] spectrumDB, double nominalHz) {
+        double binWidth = sampleRateReal / nominal.getFftLen();
+        int center = (int) Math.round(nominalHz / binWidth);
+        // one more bin on each side, a peak must have a neighbour on both sides
+        int half = Math.max((int) Math.ceil(MAX_OFFSET_HZ / binWidth), 1) + 1;
+        int lo = Math.max(center - half, 0);
+        int hi = Math.min(center + half, spectrumDB.length - 1);
+        int peak = lo;
+        for (int k = lo + 1; k <= hi; k++) {
+            if (spectrumDB[k] > spectrumDB[peak]) {
+                peak = k;
+            }
+        }
+        if (peak == lo || peak == hi) {
+            return Double.NaN;    // no maximum inside the range
+        }
+        double a = spectrumDB[peak - 1];
+        double b = spectrumDB[peak];
+        double c = spectrumDB[peak + 1];
+        double delta = 0.5 * (a - c) / (a - 2 * b + c);   // -0.5 .. 0.5 bins from the peak bin
+        if (Double.isNaN(delta) || Double.isInfinite(delta)) {
+            delta = 0;
+        }
+        double peakHz = (peak + delta) * binWidth;
+        return Math.abs(peakHz - nominalHz) <= MAX_OFFSET_HZ ? peakHz : Double.NaN;
+    }
+}
@@ -24,11 +24,13 @@ https://stackoverflow.com/questions/3506696/auto-scrolling-textview-in-android-t
 public class MainActivity extends AppCompatActivity {
 
     // for visualizing the measured amplitude of the different frequencies
-    TextView frequenciesTextVisualization;
+    SpectrumView spectrumView;
     // for informing about the current state of the app
     TextView currentState;
     // for displaying the coded and decoded message
     TextView decodedMessage;
+    // updates the views above once per display frame, see UiPublisher
+    UiPublisher uiPublisher;
 
     SamplingLoop samplingThread = null;
     private AnalyzerParameters analyzerParam = null;
@@ -39,29 +41,39 @@ public class MainActivity extends AppCompatActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
-        frequenciesTextVisualization = findViewById(R.id.audio_signal);
+        spectrumView = findViewById(R.id.spectrum_view);
         currentState = findViewById(R.id.current_state);
         decodedMessage = findViewById(R.id.decode_message);
         decodedMessage.setMovementMethod(new ScrollingMovementMethod());
+        uiPublisher = new UiPublisher(new UiPublisher.Display() {
+            @Override
+            public void showSpectrum(ChannelPlan channelPlan, double[] spectrumDB) {
+                spectrumView.setSpectrum(channelPlan, spectrumDB);
+            }
+
+            @Override
+            public void clearText() {
+                decodedMessage.setText("");
+            }
+
+            @Override
+            public void appendText(CharSequence text) {
+                decodedMessage.append(text);
+            }
+
+            @Override
+            public void showState(String state) {
+                currentState.setText(state);
+            }
+        });
 
         Resources res = getResources();
         analyzerParam = new AnalyzerParameters(res);
+        if (analyzerParam.extendedBand) {
+            analyzerParam.probeSampleRate();
+        }
 
-        frequenciesTextVisualization.setText(
-                "Phase       :\n" +
-                "17.8 kHz ([):\n" +
-                "18.0 kHz (0):\n" +
-                "18.2 kHz (1):\n" +
-                "18.4 kHz (2):\n" +
-                "18.6 kHz (3):\n" +
-                "18.8 kHz (4):\n" +
-                "19.0 kHz (5):\n" +
-                "19.2 kHz (6):\n" +
-                "19.4 kHz (7):\n" +
-                "19.6 kHz (8):\n" +
-                "19.8 kHz (9):\n" +
-                "20.0 kHz (]):"
-        );
+        spectrumView.setSpectrum(ChannelPlan.create(analyzerParam), null);
         currentState.setText("Info: Please start recording :)");
     }
 
@@ -85,6 +97,7 @@ public class MainActivity extends AppCompatActivity {
 
     @Override
     public void onDestroy() {
+        uiPublisher.stop();
         super.onDestroy();
     }
 
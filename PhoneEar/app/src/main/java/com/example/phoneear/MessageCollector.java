@@ -0,0 +1,129 @@
+package com.example.phoneear;
+
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes samples that are all there already, a recording (FileAudioSource) or synthesized
+ * transmissions (ToneSynthesizer), without recorder and UI: feeds them to an AnalysisPipeline as
+ * fast as the CPU allows and collects the decoded messages with the time they were decoded at.
+ * Used by BatchDecoder and by the tests and benchmarks. Given an Output, it passes the messages on
+ * to it instead and keeps nothing, e.g. to measure what the analysis allocates.
+ */
+class MessageCollector implements MessageDecoder.Output {
+
+    static class Message {
+        final double seconds;    // position in the samples when the message was decoded
+        final boolean valid;
+        final String text;
+
+        Message(double seconds, boolean valid, String text) {
+            this.seconds = seconds;
+            this.valid = valid;
+            this.text = text;
+        }
+    }
+
+    // nothing to show without UI
+    private static final AnalysisPipeline.Listener NO_LISTENER = new AnalysisPipeline.Listener() {
+        @Override
+        public void spectrumReady(double[] spectrumDB) {
+        }
+
+        @Override
+        public void standbyChanged(boolean standby) {
+        }
+    };
+
+    private final AnalysisPipeline pipeline;
+    private final int nChannels;
+    private final double sampleRate;
+    private final MessageDecoder.Output output;   // null: the messages are collected
+    private final List<Message> messages = new ArrayList<>();
+    private volatile long framesFed;   // written by the feeding thread only
+
+    // analyzerParam.sampleRate must be the one of the samples.
+    MessageCollector(AnalyzerParameters analyzerParam, int nChannels) {
+        this(analyzerParam, nChannels, null);
+    }
+
+    MessageCollector(AnalyzerParameters analyzerParam, int nChannels, MessageDecoder.Output output) {
+        this.nChannels = nChannels;
+        this.output = output;
+        sampleRate = analyzerParam.sampleRate;
+        pipeline = new AnalysisPipeline(analyzerParam, nChannels, this, NO_LISTENER);
+    }
+
+    AnalysisPipeline getPipeline() {
+        return pipeline;
+    }
+
+    // Starts the pipeline, feeds all samples in chunks of chunkFrames frames and stops it.
+    void decode(ShortBuffer samples, int chunkFrames) {
+        pipeline.start();
+        feed(samples, chunkFrames);
+        pipeline.finish();
+    }
+
+    void decode(short[] samples, int chunkFrames) {
+        pipeline.start();
+        feed(samples, chunkFrames);
+        pipeline.finish();
+    }
+
+    // Feeds all samples to the started pipeline, e.g. several times over. Allocates nothing.
+    void feed(ShortBuffer samples, int chunkFrames) {
+        feed(null, samples, samples.limit(), chunkFrames);
+    }
+
+    void feed(short[] samples, int chunkFrames) {
+        feed(samples, null, samples.length, chunkFrames);
+    }
+
+    private void feed(short[] array, ShortBuffer buffer, int length, int chunkFrames) {
+        int chunk = chunkFrames * nChannels;
+        for (int offset = 0; offset < length; offset += chunk) {
+            int n = Math.min(chunk, length - offset);
+            if (array != null) {
+                pipeline.process(array, offset, n, false);
+            } else {
+                pipeline.process(buffer, offset, n, false);
+            }
+            framesFed += n / nChannels;
+        }
+    }
+
+    @Override
+    public void append(String text) {
+        if (output != null) {
+            output.append(text);
+        }
+    }
+
+    // also called by the workers of ParallelDecoder
+    @Override
+    public synchronized void messageDecoded(String message, boolean valid) {
+        if (output != null) {
+            output.messageDecoded(message, valid);
+        } else {
+            messages.add(new Message(framesFed / sampleRate, valid, message));
+        }
+    }
+
+    synchronized List<Message> getMessages() {
+        return new ArrayList<>(messages);
+    }
+
+    // the decoded messages separated by spaces
+    synchronized String getText() {
+        StringBuilder text = new StringBuilder();
+        for (Message message : messages) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            text.append(message.text);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.phoneear;
+
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Turns the detected symbols of one transmission into a message.
+ * Text mode: two decimal digits are one upper-case letter (ASCII 65 to 90).
+ * Binary mode: every multi-tone symbol carries several bits of a frame, see FrameCodec.
+ *
+ * The received digits are collected in a reusable buffer and the stream of detected signals is
+ * made of constant strings, so a symbol allocates nothing; only a decoded message is a new String.
+ */
+class MessageDecoder {
+    private static final String TAG = "MessageDecoder";
+    private static final String[] HEX_DIGITS =
+            {"0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "a", "b", "c", "d", "e", "f"};
+
+    interface Output {
+        // everything that should be shown in the stream of detected signals
+        void append(String text);
+        // a complete message, valid if it passed the CRC (binary) or has no gaps (text)
+        void messageDecoded(String message, boolean valid);
+    }
+
+    private final Output output;
+    private final boolean multiToneMode;
+    private final MultiToneCode multiToneCode;
+    private final FrameCodec frameCodec;          // null in text mode
+    private final FrameDecoder frameDecoder;
+    private final String[] symbolText;            // binary mode: every symbol in hex, for the stream
+    // text mode: the digits '0' to '9' and '_' of the current transmission, grown for longer ones
+    private char[] receivedDigits = new char[64];
+    private int nReceivedDigits;
+    private char[] letters = new char[32];
+    private volatile boolean started = false;
+
+    MessageDecoder(AnalyzerParameters analyzerParam, MultiToneCode multiToneCode, Output output) {
+        this.output = output;
+        this.multiToneMode = analyzerParam.multiToneMode;
+        this.multiToneCode = multiToneCode;
+        if (analyzerParam.binaryFraming && ! analyzerParam.multiToneMode) {
+            Log.w(TAG, "MessageDecoder(): binary framing needs the multi-tone mode, using text mode.");
+        }
+        frameCodec = analyzerParam.binaryFraming && analyzerParam.multiToneMode
+                ? new FrameCodec(multiToneCode) : null;
+        int bitsPerSymbol = frameCodec != null ? frameCodec.getBitsPerSymbol() : ReedSolomon.MIN_BITS;
+        frameDecoder = new FrameDecoder(bitsPerSymbol, analyzerParam.fecParitySymbols);
+        symbolText = new String[1 << bitsPerSymbol];
+        for (int i = 0; i < symbolText.length; i++) {
+            symbolText[i] = String.format(Locale.US, "%0" + (bitsPerSymbol + 3) / 4 + "x", i);
+        }
+    }
+
+    boolean isStarted() {
+        return started;
+    }
+
+    // false for multi-tone code words that can not occur, e.g. the ones without symbol in binary framing
+    boolean isCodeWordUsed(int value) {
+        return frameCodec == null || frameCodec.symbolOf(value) >= 0;
+    }
+
+    // starting signal
+    void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        nReceivedDigits = 0;
+        frameDecoder.reset();
+        output.append("\n[");
+    }
+
+    // single tone digit 0..9
+    void digit(int digit) {
+        if (! started) {
+            return;
+        }
+        String s = HEX_DIGITS[digit];
+        appendDigits(s);
+        output.append(s);
+    }
+
+    // multi-tone code word
+    void codeWord(int value) {
+        if (! started) {
+            return;
+        }
+        if (frameCodec != null) {
+            int symbol = frameCodec.symbolOf(value);
+            if (symbol < 0) {
+                missing();
+            } else {
+                output.append(symbolText[symbol]);
+                onFrameState(frameDecoder.push(symbol));
+            }
+        } else {
+            String digits = multiToneCode.digitsOf(value);
+            appendDigits(digits);
+            output.append(digits);
+        }
+    }
+
+    // a symbol was expected but not detected
+    void missing() {
+        if (! started) {
+            return;
+        }
+        if (frameCodec != null) {
+            output.append("_");
+            onFrameState(frameDecoder.pushErasure());
+        } else {
+            String digits = multiToneMode ? multiToneCode.missingDigits() : "_";
+            appendDigits(digits);
+            output.append(digits);
+        }
+    }
+
+    // ending signal
+    void end() {
+        if (! started) {
+            return;
+        }
+        started = false;
+        if (frameCodec != null) {
+            output.append("] incomplete frame");
+            output.messageDecoded("", false);
+        } else {
+            String message = decodeText();
+            output.append("] = ");
+            output.append(message);
+            output.messageDecoded(message, message.indexOf('_') < 0);
+        }
+    }
+
+    private void appendDigits(String digits) {
+        if (nReceivedDigits + digits.length() + 1 > receivedDigits.length) {   // + 1 for decodeText()
+            receivedDigits = Arrays.copyOf(receivedDigits, 2 * (nReceivedDigits + digits.length() + 1));
+        }
+        digits.getChars(0, digits.length(), receivedDigits, nReceivedDigits);
+        nReceivedDigits += digits.length();
+    }
+
+    private void onFrameState(int state) {
+        if (state == FrameDecoder.VALID) {
+            started = false;
+            byte[] frame = frameDecoder.getFrame();
+            StringBuilder payload = new StringBuilder(frameDecoder.getPayloadLength());
+            for (int i = 1; i <= frameDecoder.getPayloadLength(); i++) {
+                char c = (char) (frame[i] & 0xFF);
+                payload.append(c >= 32 && c < 127 ? c : '.');
+            }
+            String message = payload.toString();
+            if (frameDecoder.getCorrectedSymbols() > 0) {
+                output.append("] = " + message + " (" + frameDecoder.getCorrectedSymbols() + " corrected)");
+            } else {
+                output.append("] = " + message);
+            }
+            output.messageDecoded(message, true);
+        } else if (state == FrameDecoder.INVALID) {
+            started = false;
+            output.append("] frame error");
+            output.messageDecoded("", false);
+        }
+    }
+
+    // Pair the received decimal digits and map each pair to an upper-case letter.
+    private String decodeText() {
+        int messageLength = nReceivedDigits;
+        if (messageLength % 2 == 1) { // in case the length of the message is not even, add a "_" at the end
+            receivedDigits[messageLength++] = '_';
+        }
+        if (letters.length < messageLength / 2) {
+            letters = new char[messageLength];
+        }
+        for (int i = 0; i < messageLength; i += 2) {
+            char d1 = receivedDigits[i];
+            char d2 = receivedDigits[i+1];
+            int code = d1 == '_' || d2 == '_' ? -1 : (d1 - '0') * 10 + (d2 - '0');
+            letters[i / 2] = code >= 'A' && code <= 'Z' ? (char) code : '_';
+        }
+        return new String(letters, 0, messageLength / 2);
+    }
+}
@@ -0,0 +1,312 @@
+package com.example.phoneear;
+
+import java.nio.ShortBuffer;
+
+/*
+Sources:
+https://en.wikipedia.org/wiki/Diversity_combining
+https://en.wikipedia.org/wiki/Maximal-ratio_combining
+ */
+
+/**
+ * STFT of interleaved multi-microphone input with diversity combining.
+ * Every channel has its own ShortTimeFT; channel 0 is analysed on the calling thread, the
+ * other channels at the same time on one thread each, or after it on the calling thread too.
+ * The microphones of a phone differ a lot in placement and ultrasonic response, so the spectra
+ * are combined before decoding:
+ * - max SNR: the spectrum of the channel whose strongest carrier is furthest above its
+ *   comparison band is used as it is;
+ * - weighted: every channel's power is divided by its own comparison level and the channels are
+ *   summed weighted by their SNR (maximal-ratio combining of the carrier powers), then scaled
+ *   back to the mean comparison level, so the thresholds of the detector still apply.
+ * Only the bins the detector reads are combined, around the carriers and the comparison
+ * frequencies; the other bins, e.g. for the spectrogram, are taken from the best channel.
+ * With one channel it is a plain ShortTimeFT.
+ */
+class MultiChannelSTFT {
+    private final ShortTimeFT[] stfts;
+    private final ChannelWorker[] workers;      // channels 1 .. n-1, not started without channel threads
+    private final ChannelPlan channelPlan;
+    private final boolean maxSnrSelection;
+    private final double[][] channelDB;
+    private final double[] noiseDB;
+    private final double[] weight;
+    private final double[] combinedDB;
+    private final int[] combinedBins;           // bins read by the detector and the frequency tracker
+    private int bestChannel;
+    private boolean channelThreads;
+
+    // One ShortTimeFT per channel of the analyzer parameters.
+    static MultiChannelSTFT create(AnalyzerParameters analyzerParam, ChannelPlan channelPlan, int nChannels,
+                                   boolean maxSnrSelection) {
+        ShortTimeFT[] stfts = new ShortTimeFT[nChannels];
+        for (int c = 0; c < nChannels; c++) {
+            stfts[c] = new ShortTimeFT(analyzerParam);
+            stfts[c].setAWeighting(analyzerParam.isAWeighting);
+        }
+        return new MultiChannelSTFT(stfts, channelPlan, maxSnrSelection);
+    }
+
+    MultiChannelSTFT(ShortTimeFT[] stfts, ChannelPlan channelPlan, boolean maxSnrSelection) {
+        this.stfts = stfts;
+        this.channelPlan = channelPlan;
+        this.maxSnrSelection = maxSnrSelection;
+        for (int c = 0; c < stfts.length; c++) {
+            stfts[c].setChannel(c, stfts.length);
+        }
+        workers = new ChannelWorker[stfts.length - 1];
+        channelDB = new double[stfts.length][];
+        noiseDB = new double[stfts.length];
+        weight = new double[stfts.length];
+        combinedDB = new double[channelPlan.getFftLen() / 2 + 1];
+
+        // The corrected plan of the frequency tracker reads the carriers up to MAX_OFFSET_HZ away, a bit
+        // more at the end of the band; the tracker's peak search and the interpolation need two more bins.
+        double binWidth = channelPlan.getBinWidth();
+        int margin = (int) Math.ceil(2 * FrequencyTracker.MAX_OFFSET_HZ / binWidth) + 2;
+        boolean[] used = new boolean[combinedDB.length];
+        for (int i = 0; i < channelPlan.size(); i++) {
+            markBins(used, channelPlan.getCarrierBin(i), margin);
+        }
+        for (int i = 0; i < channelPlan.getReferences(); i++) {
+            markBins(used, (int) Math.round(channelPlan.getReferenceFrequency(i) / binWidth), margin);
+        }
+        int nUsed = 0;
+        for (boolean u : used) {
+            nUsed += u ? 1 : 0;
+        }
+        combinedBins = new int[nUsed];
+        for (int k = 0, n = 0; k < used.length; k++) {
+            if (used[k]) {
+                combinedBins[n++] = k;
+            }
+        }
+    }
+
+    private static void markBins(boolean[] used, int center, int margin) {
+        for (int k = Math.max(center - margin, 0); k <= Math.min(center + margin, used.length - 1); k++) {
+            used[k] = true;
+        }
+    }
+
+    int getChannels() {
+        return stfts.length;
+    }
+
+    // channel used for the last spectrum in max SNR selection
+    int getBestChannel() {
+        return bestChannel;
+    }
+
+    void start(int stftThreads) {
+        start(stftThreads, true);
+    }
+
+    // channelThreads false: all channels on the calling thread, e.g. for BatchDecoder
+    void start(int stftThreads, boolean channelThreads) {
+        for (ShortTimeFT stft : stfts) {
+            stft.startWorkers(stftThreads);
+        }
+        this.channelThreads = channelThreads;
+        if (! channelThreads) {
+            return;
+        }
+        for (int c = 1; c < stfts.length; c++) {
+            workers[c - 1] = new ChannelWorker(c, stfts[c]);
+            workers[c - 1].start();
+        }
+    }
+
+    void stop() {
+        for (ChannelWorker worker : workers) {
+            if (worker != null) {
+                worker.quit();
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        for (ShortTimeFT stft : stfts) {
+            stft.stopWorkers();
+        }
+    }
+
+    // dsLen interleaved samples of all channels starting at offset, a multiple of the channel count
+    void feedData(short[] ds, int offset, int dsLen) {
+        if (! channelThreads) {
+            for (ShortTimeFT stft : stfts) {
+                stft.feedData(ds, offset, dsLen);
+            }
+            return;
+        }
+        for (ChannelWorker worker : workers) {
+            worker.submit(ds, null, offset, dsLen);
+        }
+        stfts[0].feedData(ds, offset, dsLen);
+        for (ChannelWorker worker : workers) {
+            worker.await();
+        }
+    }
+
+    void feedData(ShortBuffer ds, int offset, int dsLen) {
+        if (! channelThreads) {
+            for (ShortTimeFT stft : stfts) {
+                stft.feedData(ds, offset, dsLen);
+            }
+            return;
+        }
+        for (ChannelWorker worker : workers) {
+            worker.submit(null, ds, offset, dsLen);
+        }
+        stfts[0].feedData(ds, offset, dsLen);
+        for (ChannelWorker worker : workers) {
+            worker.await();
+        }
+    }
+
+    // all channels get the same number of samples, so they have the same number of FFTs
+    int nElemSpectrumAmp() {
+        return stfts[0].nElemSpectrumAmp();
+    }
+
+    void setHopLen(int hopLen) {
+        for (ShortTimeFT stft : stfts) {
+            stft.setHopLen(hopLen);
+        }
+    }
+
+    void clear() {
+        for (ShortTimeFT stft : stfts) {
+            stft.clear();
+        }
+    }
+
+    double[] getSpectrumAmpDB() {
+        if (stfts.length == 1) {
+            return stfts[0].getSpectrumAmpDB();
+        }
+        for (int c = 0; c < stfts.length; c++) {
+            channelDB[c] = stfts[c].getSpectrumAmpDB();
+        }
+        return combine(channelDB);
+    }
+
+    // Combine the spectra in dB of all channels, the result is valid until the next call.
+    double[] combine(double[][] spectraDB) {
+        bestChannel = 0;
+        double bestSnr = Double.NEGATIVE_INFINITY;
+        double meanNoiseDB = 0;
+        for (int c = 0; c < spectraDB.length; c++) {
+            noiseDB[c] = channelPlan.referenceLevel(spectraDB[c]);
+            double snr = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < channelPlan.size(); i++) {
+                snr = Math.max(snr, channelPlan.carrierLevel(spectraDB[c], i) - noiseDB[c]);
+            }
+            if (snr > bestSnr) {
+                bestSnr = snr;
+                bestChannel = c;
+            }
+            weight[c] = Math.pow(10, Math.max(snr, 0) / 10);
+            meanNoiseDB += noiseDB[c] / spectraDB.length;
+        }
+        if (maxSnrSelection) {
+            System.arraycopy(spectraDB[bestChannel], 0, combinedDB, 0, combinedDB.length);
+            return combinedDB;
+        }
+
+        double weightSum = 0;
+        for (double w : weight) {
+            weightSum += w;
+        }
+        // the other bins from the best channel at the mean comparison level, no pow and log10 for them
+        double[] bestDB = spectraDB[bestChannel];
+        double offsetDB = meanNoiseDB - noiseDB[bestChannel];
+        for (int k = 0; k < combinedDB.length; k++) {
+            combinedDB[k] = bestDB[k] + offsetDB;
+        }
+        for (int k : combinedBins) {
+            double sum = 0;
+            for (int c = 0; c < spectraDB.length; c++) {
+                sum += weight[c] * Math.pow(10, (spectraDB[c][k] - noiseDB[c]) / 10);
+            }
+            combinedDB[k] = 10 * Math.log10(sum / weightSum) + meanNoiseDB;
+        }
+        return combinedDB;
+    }
+
+    // Feeds one channel's STFT on its own thread.
+    private static class ChannelWorker extends Thread {
+        private final ShortTimeFT stft;
+        private short[] array;
+        private ShortBuffer buffer;
+        private int offset;
+        private int len;
+        private boolean hasWork;
+        private boolean done;
+        private boolean quit;
+
+        ChannelWorker(int channel, ShortTimeFT stft) {
+            super("STFT-channel-" + channel);
+            this.stft = stft;
+        }
+
+        synchronized void submit(short[] array, ShortBuffer buffer, int offset, int len) {
+            this.array = array;
+            this.buffer = buffer;
+            this.offset = offset;
+            this.len = len;
+            hasWork = true;
+            done = false;
+            notifyAll();
+        }
+
+        synchronized void await() {
+            boolean interrupted = false;
+            while (! done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;     // the samples must be analysed before the ring can reuse them
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized void quit() {
+            quit = true;
+            notifyAll();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                synchronized (this) {
+                    while (! hasWork && ! quit) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (quit) {
+                        return;
+                    }
+                    hasWork = false;
+                }
+                if (array != null) {
+                    stft.feedData(array, offset, len);
+                } else {
+                    stft.feedData(buffer, offset, len);
+                }
+                synchronized (this) {
+                    done = true;
+                    notifyAll();
+                }
+            }
+        }
+    }
+}
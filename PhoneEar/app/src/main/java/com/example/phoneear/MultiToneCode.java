@@ -0,0 +1,120 @@
+package com.example.phoneear;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/*
+Sources:
+https://en.wikipedia.org/wiki/Constant-weight_code
+https://en.wikipedia.org/wiki/Multiple_frequency-shift_keying
+ */
+
+/**
+ * k-of-n tone code for the multi-tone mode.
+ * Exactly k of the n digit carriers (18.0 kHz to 19.8 kHz) are on during one symbol,
+ * the set of active carriers is the code word. With 3 of 10 carriers there are
+ * C(10,3) = 120 code words, enough for two decimal digits per symbol.
+ * Because every code word has the same number of active carriers, the detector only
+ * has to pick the k strongest carriers, no per-carrier on/off threshold is needed.
+ */
+class MultiToneCode {
+    private final int nCarriers;
+    private final int weight;
+    private final int[] maskOfValue;     // bit i set = carrier i is on
+    private final int[] valueOfMask;     // -1 if the mask is not a code word
+    private final String[] digitsOfValue;
+    private final String missingDigits;
+    private final int digitsPerSymbol;
+
+    MultiToneCode(int nCarriers, int weight) {
+        if (nCarriers < 1 || nCarriers > 16 || weight < 1 || weight > nCarriers) {
+            throw new IllegalArgumentException("MultiToneCode(): need 1 <= weight <= nCarriers <= 16.");
+        }
+        this.nCarriers = nCarriers;
+        this.weight = weight;
+
+        valueOfMask = new int[1 << nCarriers];
+        Arrays.fill(valueOfMask, -1);
+        int size = 0;
+        for (int mask = 0; mask < valueOfMask.length; mask++) {
+            if (Integer.bitCount(mask) == weight) {
+                valueOfMask[mask] = size++;
+            }
+        }
+        maskOfValue = new int[size];
+        for (int mask = 0; mask < valueOfMask.length; mask++) {
+            if (valueOfMask[mask] >= 0) {
+                maskOfValue[valueOfMask[mask]] = mask;
+            }
+        }
+
+        // number of decimal digits that fit into one symbol, e.g. 120 code words -> 00..99
+        int digits = 0;
+        for (int p = 10; p <= size; p *= 10) {
+            digits++;
+        }
+        digitsPerSymbol = Math.max(digits, 1);
+        digitsOfValue = new String[size];
+        for (int v = 0; v < size; v++) {
+            digitsOfValue[v] = v < Math.pow(10, digitsPerSymbol)
+                    ? String.format(Locale.US, "%0" + digitsPerSymbol + "d", v)
+                    : null;
+        }
+        char[] missing = new char[digitsPerSymbol];
+        Arrays.fill(missing, '_');
+        missingDigits = new String(missing);
+    }
+
+    int size() {
+        return maskOfValue.length;
+    }
+
+    int getWeight() {
+        return weight;
+    }
+
+    int getDigitsPerSymbol() {
+        return digitsPerSymbol;
+    }
+
+    int maskOf(int value) {
+        return maskOfValue[value];
+    }
+
+    // Return the value of the code word or -1 if the mask is not a valid code word.
+    int valueOf(int mask) {
+        if (mask < 0 || mask >= valueOfMask.length) {
+            return -1;
+        }
+        return valueOfMask[mask];
+    }
+
+    // Decimal digits carried by the code word, missingDigits() for unused code words.
+    String digitsOf(int value) {
+        String digits = value >= 0 && value < digitsOfValue.length ? digitsOfValue[value] : null;
+        return digits != null ? digits : missingDigits;
+    }
+
+    String missingDigits() {
+        return missingDigits;
+    }
+
+    // Mask of the `weight` strongest carriers in levels[offset .. offset+nCarriers).
+    // Return -1 if the weakest of them is not above the threshold.
+    int detect(int[] levels, int offset, int threshold) {
+        int mask = 0;
+        for (int j = 0; j < weight; j++) {
+            int best = -1;
+            for (int i = 0; i < nCarriers; i++) {
+                if ((mask & (1 << i)) == 0 && (best < 0 || levels[offset+i] > levels[offset+best])) {
+                    best = i;
+                }
+            }
+            if (levels[offset+best] <= threshold) {
+                return -1;
+            }
+            mask |= 1 << best;
+        }
+        return mask;
+    }
+}
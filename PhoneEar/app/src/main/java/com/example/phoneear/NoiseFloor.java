@@ -0,0 +1,105 @@
+package com.example.phoneear;
+
+import java.util.Arrays;
+
+/*
+Sources:
+https://doi.org/10.1109/89.928915 (R. Martin, Noise power spectral density estimation based on optimal smoothing and minimum statistics)
+ */
+
+/**
+ * Running noise floor of every carrier by minimum statistics.
+ * The floor is the minimum level of the carrier over the last HISTORY measurements
+ * (about 4 s at one measurement every 93 ms). The minimum of a fluctuating level lies below
+ * its mean, BIAS_DB compensates that.
+ * A level more than TONE_DB above the floor is a tone, not noise: it is not added to the history,
+ * the carrier keeps the quiet levels it has there instead. So a carrier that stays on over repeated symbols,
+ * e.g. the 7 of "77", cannot pull up its own floor and lose its SNR, nor can the neighbours it
+ * leaks into. A tone that lasts longer than MAX_TONE is steady interference, not a symbol, and
+ * so is a rise on most carriers at once: then the levels are taken and the floor follows them.
+ * Without history, at the beginning and after reset(), the median of the carriers stands for the
+ * floor of all of them: a symbol is on one or a few carriers only, so the starting signal that
+ * ended the standby is still a tone.
+ * Unlike the comparison band from 15.8 kHz to 16.8 kHz it also follows noise that is not
+ * flat over the band, e.g. a fan or a monitor whining at one of the carriers.
+ */
+class NoiseFloor {
+    static final int HISTORY = 40;
+    static final double BIAS_DB = 8;           // the minimum of HISTORY levels below their mean
+    static final double TONE_DB = 10;
+    static final int MAX_TONE = 4 * HISTORY;           // measurements, longer than any run of one digit
+    private static final double MIN_LEVEL_DB = -150;   // digital silence is -Infinity
+
+    private final double[][] history;     // [measurement % HISTORY][carrier] in dB
+    private final double[] levelsDB;      // the last measurement
+    private final double[] floorDB;
+    private final int[] toneLength;       // measurements in a row the carrier was a tone
+    private final double[] sortedDB;      // for the median
+    private int nMeasurements;
+
+    NoiseFloor(int nCarriers) {
+        history = new double[HISTORY][nCarriers];
+        levelsDB = new double[nCarriers];
+        floorDB = new double[nCarriers];
+        toneLength = new int[nCarriers];
+        sortedDB = new double[nCarriers];
+        reset();
+    }
+
+    // Forget the history, e.g. after standby: the noise may have changed meanwhile.
+    void reset() {
+        for (double[] levels : history) {
+            Arrays.fill(levels, Double.MAX_VALUE);   // no level yet
+        }
+        Arrays.fill(toneLength, 0);
+        nMeasurements = 0;
+    }
+
+    // Add one measurement and update the floor of every carrier.
+    void update(ChannelPlan channelPlan, double[] spectrumDB) {
+        for (int i = 0; i < levelsDB.length; i++) {
+            levelsDB[i] = Math.max(channelPlan.carrierLevel(spectrumDB, i), MIN_LEVEL_DB);
+        }
+        if (nMeasurements == 0) {
+            System.arraycopy(levelsDB, 0, sortedDB, 0, levelsDB.length);
+            Arrays.sort(sortedDB);
+            Arrays.fill(floorDB, sortedDB[sortedDB.length / 2]);
+        }
+        int nTones = 0;
+        for (int i = 0; i < levelsDB.length; i++) {
+            boolean tone = levelsDB[i] - floorDB[i] > TONE_DB;
+            toneLength[i] = tone ? toneLength[i] + 1 : 0;
+            if (tone) {
+                nTones++;
+            }
+        }
+        boolean noiseRose = 2 * nTones > levelsDB.length;
+        double[] levels = history[nMeasurements % HISTORY];
+        for (int i = 0; i < levels.length; i++) {
+            if (toneLength[i] == 0 || toneLength[i] > MAX_TONE || noiseRose) {
+                levels[i] = levelsDB[i];
+            }
+        }
+        nMeasurements++;
+
+        int n = Math.min(nMeasurements, HISTORY);
+        for (int i = 0; i < floorDB.length; i++) {
+            double min = Double.MAX_VALUE;
+            for (int k = 0; k < n; k++) {
+                min = Math.min(min, history[k][i]);
+            }
+            if (min < Double.MAX_VALUE) {
+                floorDB[i] = min + BIAS_DB;
+            }   // else a tone since the beginning, it keeps the median
+        }
+    }
+
+    double getFloor(int carrier) {
+        return floorDB[carrier];
+    }
+
+    // SNR in dB of the carrier in the last measurement
+    double snr(int carrier) {
+        return levelsDB[carrier] - floorDB[carrier];
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.phoneear;
+
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Runs several detector configurations (see DetectorConfig) at the same time, each on its own
+ * worker thread with its own SymbolDetector and MessageDecoder, on the same stream of spectra.
+ * The sampling thread copies every measurement once into a buffer of a small pool, the STFT
+ * reuses its own array for the next spectrum. The workers read the buffers in place.
+ * The sampling thread never waits for the workers: a buffer has a count of its readers, the
+ * sampling thread only writes a buffer it can lock from 0 readers, and a worker only reads one it
+ * could lock for reading while it holds the spectrum the worker is looking for. With RING_SIZE
+ * buffers for the recent spectra and one more per worker there is always a free one. A spectrum
+ * that was replaced before a worker got to it is dropped like one the worker fell behind on.
+ * The first message that passes validation (CRC in binary framing, no gaps in text mode)
+ * is accepted; the same transmission finished later by other workers is ignored.
+ */
+class ParallelDecoder {
+    private static final String TAG = "ParallelDecoder";
+    private static final int RING_SIZE = 8;
+
+    interface Listener {
+        void messageAccepted(String message, DetectorConfig config);
+    }
+
+    private final double[][] buffers;
+    private final long[] bufferSeq;          // sequence number of the spectrum in the buffer
+    private final AtomicIntegerArray readers;   // workers reading the buffer, -1 while it is written
+    private final AtomicIntegerArray ring;   // buffer of the spectrum seq at seq % RING_SIZE
+    private final Object lock = new Object();
+    private volatile long published = -1;   // sequence number of the newest spectrum
+    private volatile boolean isRunning = true;
+    private volatile long resetFrom = -1;   // the workers reset their detectors before this spectrum
+    private final Worker[] workers;
+    private final Listener listener;
+
+    private long acceptedEnd = -1;          // sequence number at which the last accepted message ended
+    private final int[] nAccepted;          // accepted messages per worker, to see which configuration works
+
+    ParallelDecoder(AnalyzerParameters analyzerParam, ChannelPlan channelPlan, MultiToneCode multiToneCode,
+                    DetectorConfig[] configs, Listener listener) {
+        this.listener = listener;
+        buffers = new double[RING_SIZE + configs.length][analyzerParam.fftLen/2+1];
+        bufferSeq = new long[buffers.length];
+        Arrays.fill(bufferSeq, -RING_SIZE);
+        readers = new AtomicIntegerArray(buffers.length);
+        ring = new AtomicIntegerArray(RING_SIZE);
+        nAccepted = new int[configs.length];
+        workers = new Worker[configs.length];
+        for (int i = 0; i < configs.length; i++) {
+            workers[i] = new Worker(i, configs[i], analyzerParam, channelPlan, multiToneCode);
+        }
+    }
+
+    void start() {
+        for (Worker w : workers) {
+            w.start();
+        }
+    }
+
+    // Called by the sampling thread for every measurement.
+    void publish(double[] spectrumDB) {
+        long seq = published + 1;
+        // a buffer that no worker reads and that holds none of the last RING_SIZE - 1 spectra
+        int buffer = 0;
+        while (bufferSeq[buffer] > seq - RING_SIZE || ! readers.compareAndSet(buffer, 0, -1)) {
+            buffer = (buffer + 1) % buffers.length;
+        }
+        System.arraycopy(spectrumDB, 0, buffers[buffer], 0, spectrumDB.length);
+        bufferSeq[buffer] = seq;
+        readers.set(buffer, 0);
+        ring.set((int) (seq % RING_SIZE), buffer);
+        synchronized (lock) {
+            published = seq;
+            lock.notifyAll();
+        }
+    }
+
+    // Called by the sampling thread: the detectors start afresh with the next spectrum.
+    void reset() {
+        resetFrom = published + 1;
+    }
+
+    // Measured sample rate of the recorder, passed on to the detectors.
+    void setSampleRateReal(double sampleRateReal) {
+        for (Worker w : workers) {
+            w.symbolDetector.setSampleRateReal(sampleRateReal);
+        }
+    }
+
+    // true if any worker is inside a message
+    boolean isReceiving() {
+        for (Worker w : workers) {
+            if (w.messageDecoder.isStarted()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void finish() {
+        synchronized (lock) {
+            isRunning = false;
+            lock.notifyAll();
+        }
+        for (Worker w : workers) {
+            try {
+                w.join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        for (int i = 0; i < workers.length; i++) {
+            Log.i(TAG, "ParallelDecoder::finish(): " + workers[i].config + ": " + nAccepted[i]
+                    + " accepted, " + workers[i].nDropped + " dropped");
+        }
+    }
+
+    // A message decoded by a worker from the spectra start to end (sequence numbers).
+    synchronized void offer(int worker, long start, long end, String message, boolean valid) {
+        if (! valid || start <= acceptedEnd) {
+            return;     // invalid, or a transmission that was accepted already
+        }
+        acceptedEnd = end;
+        nAccepted[worker]++;
+        listener.messageAccepted(message, workers[worker].config);
+    }
+
+    private class Worker extends Thread implements MessageDecoder.Output {
+        final int index;
+        final DetectorConfig config;
+        final MessageDecoder messageDecoder;
+        final SymbolDetector symbolDetector;
+        long seq = -1;              // last processed spectrum
+        long resetDone = -1;        // resetFrom the detector was reset for
+        long messageStart;
+        int nDropped;
+
+        Worker(int index, DetectorConfig config, AnalyzerParameters analyzerParam, ChannelPlan channelPlan,
+               MultiToneCode multiToneCode) {
+            super("ParallelDecoder-" + index);
+            this.index = index;
+            this.config = config;
+            messageDecoder = new MessageDecoder(analyzerParam, multiToneCode, this);
+            symbolDetector = new SymbolDetector(channelPlan, config, analyzerParam.multiToneMode, multiToneCode, messageDecoder);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                long newest;
+                synchronized (lock) {
+                    while (isRunning && published == seq) {
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (! isRunning) {
+                        return;
+                    }
+                    newest = published;
+                }
+                if (newest - seq >= RING_SIZE - 1) {
+                    // fell behind, the oldest spectra are being replaced
+                    nDropped += newest - seq - 1;
+                    seq = newest - 1;
+                }
+                while (seq < newest) {
+                    seq++;
+                    int buffer = ring.get((int) (seq % RING_SIZE));
+                    if (! lockForReading(buffer)) {
+                        nDropped++;
+                        continue;
+                    }
+                    try {
+                        // the ring entry may have been reused for a newer spectrum meanwhile
+                        if (bufferSeq[buffer] != seq) {
+                            nDropped++;
+                            continue;
+                        }
+                        long reset = resetFrom;
+                        if (seq >= reset && resetDone != reset) {
+                            symbolDetector.reset();
+                            resetDone = reset;
+                        }
+                        boolean wasStarted = messageDecoder.isStarted();
+                        symbolDetector.process(buffers[buffer]);
+                        if (! wasStarted && messageDecoder.isStarted()) {
+                            messageStart = seq;
+                        }
+                    } finally {
+                        readers.decrementAndGet(buffer);
+                    }
+                }
+            }
+        }
+
+        // false if the sampling thread is writing the buffer
+        private boolean lockForReading(int buffer) {
+            while (true) {
+                int n = readers.get(buffer);
+                if (n < 0) {
+                    return false;
+                }
+                if (readers.compareAndSet(buffer, n, n + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public void append(String text) {
+            // only accepted messages are shown
+        }
+
+        @Override
+        public void messageDecoded(String message, boolean valid) {
+            offer(index, messageStart, seq, message, valid);
+        }
+    }
+}
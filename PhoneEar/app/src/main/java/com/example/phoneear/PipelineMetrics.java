@@ -0,0 +1,108 @@
+package com.example.phoneear;
+
+import java.util.Locale;
+
+/**
+ * Latency of every stage of the receiver, one LatencyHistogram each:
+ *   read       AudioSource.read() in the capture thread, mostly the wait for the recorder
+ *   feed       ShortTimeFT.feedData() of a read chunk, including the FFTs
+ *   spectrum   averaging and dB of a spectrum
+ *   decode     detection tick (SymbolDetector), or only handing the spectrum over to ParallelDecoder
+ *   ui         posting a spectrum to the UI
+ *   capture->decode  from the return of the read with the newest sample of a tick to the end of its
+ *              detection; the time the samples spent in the recorder buffer before is not included
+ *
+ * The stages are timed with System.nanoTime() into preallocated histograms, nothing is allocated
+ * while recording. snapshot() and dump() may be called from any thread; a histogram written by
+ * another thread can be a few values behind.
+ */
+class PipelineMetrics {
+    static final int READ = 0;
+    static final int FEED = 1;
+    static final int SPECTRUM = 2;
+    static final int DECODE = 3;
+    static final int UI = 4;
+    static final int CAPTURE_TO_DECODE = 5;
+    static final String[] STAGE_NAMES = {"read", "feed", "spectrum", "decode", "ui", "capture->decode"};
+
+    // when the capture thread committed the samples up to a position, the last STAMPS reads
+    private static final int STAMPS = 1024;
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STAGE_NAMES.length];
+    private final LatencyHistogram[] lastDump = new LatencyHistogram[STAGE_NAMES.length];
+    private final LatencyHistogram current = new LatencyHistogram();
+    private final LatencyHistogram interval = new LatencyHistogram();
+
+    private final long[] stampPosition = new long[STAMPS];
+    private final long[] stampNanos = new long[STAMPS];
+    private volatile long nStamps;
+    private long consumed;         // samples taken out of the ring by the DSP thread
+
+    PipelineMetrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+            lastDump[i] = new LatencyHistogram();
+        }
+    }
+
+    // Duration of a stage, by the thread that runs it.
+    void record(int stage, long nanos) {
+        histograms[stage].record(nanos);
+    }
+
+    // Capture thread: the samples up to position (counted from the start) were read at nanos.
+    void captured(long position, long nanos) {
+        long n = nStamps;
+        int i = (int) (n % STAMPS);
+        stampPosition[i] = position;
+        stampNanos[i] = nanos;
+        nStamps = n + 1;
+    }
+
+    // DSP thread: n more samples were taken out of the ring.
+    void consumed(int n) {
+        consumed += n;
+    }
+
+    // DSP thread: a detection tick ended at nanos, for the samples consumed so far.
+    void decoded(long nanos) {
+        long captureNanos = capturedAt(consumed);
+        if (captureNanos >= 0) {
+            histograms[CAPTURE_TO_DECODE].record(nanos - captureNanos);
+        }
+    }
+
+    // When the sample before position was read, -1 if unknown (no capture thread, or too long ago).
+    // The capture thread may overwrite the oldest stamps meanwhile, which can only spoil one value.
+    private long capturedAt(long position) {
+        long n = nStamps;
+        long found = -1;
+        for (long k = n - 1; k >= Math.max(n - STAMPS, 0); k--) {
+            int i = (int) (k % STAMPS);
+            if (stampPosition[i] < position) {
+                break;
+            }
+            found = stampNanos[i];
+        }
+        return found;
+    }
+
+    // Copy of the histogram of a stage, recorded since the start.
+    void snapshot(int stage, LatencyHistogram into) {
+        histograms[stage].copyInto(into);
+    }
+
+    // p50, p99 and maximum of every stage since the last dump, e.g. for the log.
+    synchronized String dump() {
+        StringBuilder text = new StringBuilder("stage latency since last dump (count, p50, p99, max in us):");
+        for (int stage = 0; stage < histograms.length; stage++) {
+            histograms[stage].copyInto(current);
+            interval.difference(current, lastDump[stage]);
+            current.copyInto(lastDump[stage]);
+            text.append(String.format(Locale.US, "\n  %-16s %7d %9.1f %9.1f %9.1f", STAGE_NAMES[stage],
+                    interval.getCount(), interval.percentile(0.5) / 1e3, interval.percentile(0.99) / 1e3,
+                    interval.getMax() / 1e3));
+        }
+        return text.toString();
+    }
+}
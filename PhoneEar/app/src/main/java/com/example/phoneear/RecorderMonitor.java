@@ -32,7 +32,7 @@ class RecorderMonitor {
     private long nSamplesRead;
     private int sampleRate;
     private int bufferSampleSize;
-    private double sampleRateReal;
+    private volatile double sampleRateReal;   // read by the DSP thread
     private boolean lastCheckOverrun = false;
 
     RecorderMonitor(int sampleRateIn, int bufferSampleSizeIn, String TAG1) {
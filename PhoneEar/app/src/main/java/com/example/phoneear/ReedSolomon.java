@@ -0,0 +1,269 @@
+package com.example.phoneear;
+
+import java.util.Arrays;
+
+/*
+Sources:
+https://en.wikiversity.org/wiki/Reed%E2%80%93Solomon_codes_for_coders
+https://en.wikipedia.org/wiki/Berlekamp%E2%80%93Massey_algorithm
+https://en.wikipedia.org/wiki/Forney_algorithm
+ */
+
+/**
+ * Reed-Solomon code over GF(2^m), one symbol is one m-bit symbol of a frame (see FrameCodec),
+ * m = 4 to 8. A block has at most 15 symbols, in fields larger than GF(16) the code is shortened.
+ * With p parity symbols a block can recover from e erased (known position) and t wrong symbols
+ * as long as e + 2t <= p. Shorter blocks are handled as shortened codes (leading zeros).
+ * Work arrays are allocated once, so one instance must only be used by one thread.
+ */
+class ReedSolomon {
+    static final int MAX_BLOCK = 15;
+    static final int MIN_BITS = 4;
+    static final int MAX_BITS = 8;
+    // primitive polynomials of GF(2^m), index m
+    private static final int[] PRIMITIVE = {0, 0, 0, 0, 0x13, 0x25, 0x43, 0x89, 0x11D};
+
+    private final int order;         // 2^m - 1, the number of nonzero elements
+    private final int[] exp;
+    private final int[] log;
+    private final int nParity;
+    private final int[] generator;   // coefficients, index = degree
+
+    // work arrays for decode()
+    private final int[] syndromes;
+    private final int[] locator = new int[MAX_BLOCK + 1];
+    private final int[] previous = new int[MAX_BLOCK + 1];
+    private final int[] temp = new int[MAX_BLOCK + 1];
+    private final int[] evaluator = new int[MAX_BLOCK + 1];
+    private final int[] errataPositions = new int[MAX_BLOCK];
+
+    // over GF(16), one symbol is a nibble
+    ReedSolomon(int nParity) {
+        this(MIN_BITS, nParity);
+    }
+
+    ReedSolomon(int bitsPerSymbol, int nParity) {
+        if (bitsPerSymbol < MIN_BITS || bitsPerSymbol > MAX_BITS) {
+            throw new IllegalArgumentException("ReedSolomon(): need " + MIN_BITS + " <= bitsPerSymbol <= " + MAX_BITS + ".");
+        }
+        if (nParity < 1 || nParity > MAX_BLOCK - 2) {
+            throw new IllegalArgumentException("ReedSolomon(): need 1 <= nParity <= " + (MAX_BLOCK - 2) + ".");
+        }
+        order = (1 << bitsPerSymbol) - 1;
+        exp = new int[2 * order];
+        log = new int[order + 1];
+        int x = 1;
+        for (int i = 0; i < order; i++) {
+            exp[i] = x;
+            exp[i + order] = x;
+            log[x] = i;
+            x <<= 1;
+            if ((x & (order + 1)) != 0) {
+                x ^= PRIMITIVE[bitsPerSymbol];
+            }
+        }
+        this.nParity = nParity;
+        syndromes = new int[nParity];
+
+        // g(x) = (x + a^0)(x + a^1)...(x + a^(p-1))
+        generator = new int[nParity + 1];
+        generator[0] = 1;
+        for (int i = 0; i < nParity; i++) {
+            for (int j = i + 1; j > 0; j--) {
+                generator[j] = generator[j - 1] ^ mul(generator[j], exp[i]);
+            }
+            generator[0] = mul(generator[0], exp[i]);
+        }
+    }
+
+    int getParitySymbols() {
+        return nParity;
+    }
+
+    // Largest number of data symbols per block.
+    int getDataSymbols() {
+        return MAX_BLOCK - nParity;
+    }
+
+    private int mul(int a, int b) {
+        if (a == 0 || b == 0) {
+            return 0;
+        }
+        return exp[log[a] + log[b]];
+    }
+
+    private int div(int a, int b) {
+        if (a == 0) {
+            return 0;
+        }
+        return exp[(log[a] - log[b] + order) % order];
+    }
+
+    // a^e for the primitive element a
+    private int alphaPow(int e) {
+        e %= order;
+        return exp[e < 0 ? e + order : e];
+    }
+
+    // evaluate polynomial (index = degree) at x
+    private int eval(int[] poly, int degree, int x) {
+        int y = 0;
+        for (int i = degree; i >= 0; i--) {
+            y = mul(y, x) ^ poly[i];
+        }
+        return y;
+    }
+
+    /**
+     * Compute the parity of block[offset .. offset+nData) and write it to
+     * block[offset+nData .. offset+nData+nParity).
+     */
+    void encode(int[] block, int offset, int nData) {
+        if (nData < 1 || nData > getDataSymbols()) {
+            throw new IllegalArgumentException("ReedSolomon::encode(): invalid number of data symbols " + nData + ".");
+        }
+        int parityStart = offset + nData;
+        for (int i = 0; i < nParity; i++) {
+            block[parityStart + i] = 0;
+        }
+        // remainder of data(x) * x^p divided by g(x), the parity keeps the highest coefficient first
+        for (int i = 0; i < nData; i++) {
+            int factor = block[offset + i] ^ block[parityStart];
+            for (int j = 0; j < nParity - 1; j++) {
+                block[parityStart + j] = block[parityStart + j + 1] ^ mul(factor, generator[nParity - 1 - j]);
+            }
+            block[parityStart + nParity - 1] = mul(factor, generator[0]);
+        }
+    }
+
+    /**
+     * Correct block[0 .. n) in place, the last nParity symbols are the parity.
+     * erased[i] marks symbols known to be missing (their value is ignored).
+     * Return the number of corrected symbols, or -1 if the block can not be corrected.
+     */
+    int decode(int[] block, boolean[] erased, int n) {
+        if (n <= nParity || n > MAX_BLOCK) {
+            throw new IllegalArgumentException("ReedSolomon::decode(): invalid block length " + n + ".");
+        }
+        int nErasures = 0;
+        for (int i = 0; i < n; i++) {
+            if (erased != null && erased[i]) {
+                block[i] = 0;
+                nErasures++;
+            }
+        }
+        if (nErasures > nParity) {
+            return -1;
+        }
+
+        // syndromes S_i = r(a^i), the symbol at index j belongs to x^(n-1-j)
+        boolean hasError = false;
+        for (int i = 0; i < nParity; i++) {
+            int s = 0;
+            for (int j = 0; j < n; j++) {
+                s = mul(s, exp[i]) ^ block[j];
+            }
+            syndromes[i] = s;
+            hasError |= s != 0;
+        }
+        if (! hasError) {
+            return nErasures;     // erased symbols were zero
+        }
+
+        // errata locator, starting from the erasure locator prod(1 + X_k x)
+        Arrays.fill(locator, 0);
+        locator[0] = 1;
+        int degree = 0;
+        for (int j = 0; j < n; j++) {
+            if (erased != null && erased[j]) {
+                int x = alphaPow(n - 1 - j);
+                for (int k = degree + 1; k > 0; k--) {
+                    locator[k] ^= mul(locator[k - 1], x);
+                }
+                degree++;
+            }
+        }
+        System.arraycopy(locator, 0, previous, 0, locator.length);
+
+        // Berlekamp-Massey for the remaining (unknown) errors
+        int l = nErasures;
+        for (int r = nErasures + 1; r <= nParity; r++) {
+            int delta = 0;
+            for (int j = 0; j <= l && j <= r - 1; j++) {
+                delta ^= mul(locator[j], syndromes[r - 1 - j]);
+            }
+            // previous = x * previous
+            System.arraycopy(previous, 0, temp, 1, MAX_BLOCK);
+            temp[0] = 0;
+            System.arraycopy(temp, 0, previous, 0, locator.length);
+            if (delta != 0) {
+                for (int j = 0; j < locator.length; j++) {
+                    temp[j] = locator[j] ^ mul(delta, previous[j]);
+                }
+                if (2 * l <= r + nErasures - 1) {
+                    l = r + nErasures - l;
+                    for (int j = 0; j < locator.length; j++) {
+                        previous[j] = div(locator[j], delta);
+                    }
+                }
+                System.arraycopy(temp, 0, locator, 0, locator.length);
+            }
+        }
+        degree = 0;
+        for (int j = 0; j < locator.length; j++) {
+            if (locator[j] != 0) {
+                degree = j;
+            }
+        }
+        if (degree > nParity) {
+            return -1;
+        }
+
+        // Chien search: position j is wrong if locator(X_j^-1) == 0
+        int nErrata = 0;
+        for (int j = 0; j < n; j++) {
+            if (eval(locator, degree, alphaPow(-(n - 1 - j))) == 0) {
+                errataPositions[nErrata++] = j;
+            }
+        }
+        if (nErrata != degree) {
+            return -1;    // more errors than the code can correct
+        }
+
+        // errata evaluator omega(x) = S(x) * locator(x) mod x^p
+        for (int i = 0; i < nParity; i++) {
+            int v = 0;
+            for (int j = 0; j <= i && j <= degree; j++) {
+                v ^= mul(locator[j], syndromes[i - j]);
+            }
+            evaluator[i] = v;
+        }
+
+        // Forney: e = X * omega(X^-1) / locator'(X^-1)
+        for (int k = 0; k < nErrata; k++) {
+            int j = errataPositions[k];
+            int x = alphaPow(n - 1 - j);
+            int xInv = alphaPow(-(n - 1 - j));
+            int derivative = 0;
+            for (int i = 1; i <= degree; i += 2) {      // odd terms only in characteristic 2
+                derivative ^= mul(locator[i], alphaPow(-(n - 1 - j) * (i - 1)));
+            }
+            if (derivative == 0) {
+                return -1;
+            }
+            block[j] ^= mul(x, div(eval(evaluator, nParity - 1, xInv), derivative));
+        }
+
+        // check the result
+        for (int i = 0; i < nParity; i++) {
+            int s = 0;
+            for (int j = 0; j < n; j++) {
+                s = mul(s, exp[i]) ^ block[j];
+            }
+            if (s != 0) {
+                return -1;
+            }
+        }
+        return nErrata;
+    }
+}
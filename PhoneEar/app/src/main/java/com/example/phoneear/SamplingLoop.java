@@ -18,17 +18,19 @@ package com.example.phoneear;
 import android.media.AudioFormat;
 import android.media.AudioRecord;
 import android.media.audiofx.AutomaticGainControl;
-import android.os.SystemClock;
 import android.util.Log;
 import android.widget.ToggleButton;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
 /*
 sources:
 (main source) https://github.com/bewantbe/audio-analyzer-for-android
 we built on top of that and added multiple functions for the functionality we needed
 
 https://www.quora.com/How-do-I-update-the-UI-from-a-background-thread-in-Android
-https://stackoverflow.com/questions/1235179/simple-way-to-repeat-a-string-in-java
  */
 
 /**
@@ -44,24 +46,84 @@ class SamplingLoop extends Thread {
     private final String TAG = "SamplingLoop";
     private volatile boolean isRunning = true;
     private volatile boolean recordingIsPaused;
-    private volatile boolean messageStarted = false;
-    private volatile boolean waitForNextRound = false;
     private final AnalyzerParameters analyzerParam;
 
-    private double[] spectrumDBcopy;   // transfers data from SamplingLoop to text representation
-    // initiate array that keeps score how often a frequency was the maximum value
-    private int[] frequencyMaxAmount = new int[13];
-    private int maxCounter;
+    private AnalysisPipeline pipeline;
 
     private final MainActivity activity;
+    private final UiPublisher ui;        // all updates of the views go through it
+    private static final long PARK_NANOS = 10000000;   // wait at most 10 ms for new samples
 
     SamplingLoop(MainActivity _activity, AnalyzerParameters _analyzerParam) {
         activity = _activity;
+        ui = activity.uiPublisher;
         analyzerParam = _analyzerParam;
-
         recordingIsPaused = ! ((ToggleButton) activity.findViewById(R.id.recordBtn)).isChecked();
     }
 
+    // Only reads the recorder into the ring, so a slow analysis can not make the recorder overrun.
+    private class CaptureThread extends Thread {
+        private final AudioSource source;
+        private final CaptureRing ring;
+        private final RecorderMonitor recorderMonitor;
+        private final int readChunkSize;
+        private final short[] dropBuffer;   // read into when the ring is full
+        private final Thread dspThread;
+        private final int nChannels;
+
+        CaptureThread(AudioSource source, CaptureRing ring, RecorderMonitor recorderMonitor, int readChunkSize,
+                      int nChannels) {
+            super("CaptureThread");
+            this.nChannels = nChannels;
+            this.source = source;
+            this.ring = ring;
+            this.recorderMonitor = recorderMonitor;
+            this.readChunkSize = readChunkSize;
+            dropBuffer = new short[readChunkSize];
+            dspThread = Thread.currentThread();
+        }
+
+        @Override
+        public void run() {
+            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_AUDIO);
+            PipelineMetrics metrics = pipeline.getMetrics();
+            long committed = 0;
+            while (isRunning) {
+                int writable = ring.writable();
+                int numOfReadShort;
+                long readStart = System.nanoTime();
+                if (writable == 0) {
+                    numOfReadShort = source.read(dropBuffer, 0, readChunkSize);
+                    if (numOfReadShort > 0) {
+                        ring.overrun(numOfReadShort);
+                    }
+                } else {
+                    int n = Math.min(writable, readChunkSize);
+                    if (ring.isDirect()) {
+                        int nBytes = source.read(ring.writeBuffer(), 2 * n);
+                        numOfReadShort = nBytes > 0 ? nBytes / 2 : nBytes;
+                    } else {
+                        numOfReadShort = source.read(ring.array(), ring.writeOffset(), n);
+                    }
+                    if (numOfReadShort > 0) {
+                        ring.commit(numOfReadShort);
+                        committed += numOfReadShort;
+                    }
+                }
+                long readEnd = System.nanoTime();
+                metrics.record(PipelineMetrics.READ, readEnd - readStart);
+                if (writable > 0 && numOfReadShort > 0) {
+                    metrics.captured(committed, readEnd);
+                }
+                LockSupport.unpark(dspThread);
+                // the monitor counts frames, one sample of every channel
+                if (recorderMonitor.updateState(numOfReadShort > 0 ? numOfReadShort / nChannels : numOfReadShort)) {
+                    pipeline.setSampleRateReal(recorderMonitor.getSampleRate());
+                }
+            }
+        }
+    }
+
     private void SleepWithoutInterrupt(long millis) {
         try {
             Thread.sleep(millis);
@@ -72,466 +134,221 @@ class SamplingLoop extends Thread {
 
     @Override
     public void run() {
-        AudioRecord record;
-
-        long lastUpdate = SystemClock.uptimeMillis();
-
         if (! recordingIsPaused) {
-            activity.runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                activity.currentState.setText("Info: Getting ready...");
-                activity.decodedMessage.setText("");
-                }
-            });
+            ui.publishState("Info: Getting ready...");
+            ui.clearText();
         }
 
         Log.i(TAG, "wait more.." + 500 + " ms");
         // Wait until previous instance of AudioRecord fully released.
         SleepWithoutInterrupt(500);
 
-        int minBytes = AudioRecord.getMinBufferSize(analyzerParam.sampleRate, AudioFormat.CHANNEL_IN_MONO,
-                AudioFormat.ENCODING_PCM_16BIT);
-        if (minBytes == AudioRecord.ERROR_BAD_VALUE) {
-            Log.e(TAG, "SamplingLoop::run(): Invalid AudioRecord parameter.\n");
-            return;
-        }
+        AudioSource source;
+        int bufferSampleSize;
+        if (analyzerParam.inputFile != null) {
+            try {
+                source = new FileAudioSource(new File(analyzerParam.inputFile), true);
+            } catch (IOException e) {
+                Log.e(TAG, "SamplingLoop::run(): Fail to open " + analyzerParam.inputFile + ": " + e.getMessage());
+                return;
+            }
+            if (source.getChannelCount() > 2) {
+                Log.e(TAG, "SamplingLoop::run(): " + source.getChannelCount() + " channels are not supported.");
+                return;
+            }
+            Log.i(TAG, "SamplingLoop::Run(): Replaying " + analyzerParam.inputFile + ", "
+                    + source.getChannelCount() + " channels at " + source.getSampleRate() + " Hz.");
+            bufferSampleSize = source.getSampleRate();   // a file can not overrun
+        } else {
+            int nChannels = analyzerParam.channels == 2 ? 2 : 1;
+            int channelConfig = analyzerParam.getChannelConfig();
+            int minBytes = AudioRecord.getMinBufferSize(analyzerParam.sampleRate, channelConfig,
+                    AudioFormat.ENCODING_PCM_16BIT);
+            if (minBytes == AudioRecord.ERROR_BAD_VALUE) {
+                Log.e(TAG, "SamplingLoop::run(): Invalid AudioRecord parameter.\n");
+                return;
+            }
 
-        /*
-          Develop -> Reference -> AudioRecord
-             Data should be read from the audio hardware in chunks of sizes
-             inferior to the total recording buffer size.
-         */
-        // Determine size of buffers for AudioRecord and AudioRecord::read()
-        int readChunkSize    = analyzerParam.hopLen;  // Every hopLen one fft result (overlapped analyze window)
-        readChunkSize        = Math.min(readChunkSize, 2048);  // read in a smaller chunk, hopefully smaller delay
-        int bufferSampleSize = Math.max(minBytes / analyzerParam.BYTE_OF_SAMPLE, analyzerParam.fftLen/2) * 2;
-        // tolerate up to about 1 sec.
-        bufferSampleSize = (int)Math.ceil(1.0 * analyzerParam.sampleRate / bufferSampleSize) * bufferSampleSize;
-
-        // Use the mic with AGC turned off. e.g. VOICE_RECOGNITION for measurement
-        // The buffer size here seems not relate to the delay.
-        // So choose a larger size (~1sec) so that overrun is unlikely.
-        try {
-            if (analyzerParam.audioSourceId < 1000) {
-                record = new AudioRecord(analyzerParam.audioSourceId, analyzerParam.sampleRate, AudioFormat.CHANNEL_IN_MONO,
-                        AudioFormat.ENCODING_PCM_16BIT, analyzerParam.BYTE_OF_SAMPLE * bufferSampleSize);
+            /*
+              Develop -> Reference -> AudioRecord
+                 Data should be read from the audio hardware in chunks of sizes
+                 inferior to the total recording buffer size.
+             */
+            // Determine size of buffers for AudioRecord and AudioRecord::read()
+            bufferSampleSize = Math.max(minBytes / analyzerParam.BYTE_OF_SAMPLE / nChannels, analyzerParam.fftLen/2) * 2;
+            // tolerate up to about 1 sec.
+            bufferSampleSize = (int)Math.ceil(1.0 * analyzerParam.sampleRate / bufferSampleSize) * bufferSampleSize;
+
+            // Use the mic with AGC turned off. e.g. VOICE_RECOGNITION for measurement
+            // The buffer size here seems not relate to the delay.
+            // So choose a larger size (~1sec) so that overrun is unlikely.
+            AudioRecord record;
+            try {
+                if (analyzerParam.audioSourceId < 1000) {
+                    record = new AudioRecord(analyzerParam.audioSourceId, analyzerParam.sampleRate, channelConfig,
+                            AudioFormat.ENCODING_PCM_16BIT, analyzerParam.BYTE_OF_SAMPLE * bufferSampleSize * nChannels);
+                } else {
+                    record = new AudioRecord(analyzerParam.RECORDER_AGC_OFF, analyzerParam.sampleRate, channelConfig,
+                            AudioFormat.ENCODING_PCM_16BIT, analyzerParam.BYTE_OF_SAMPLE * bufferSampleSize * nChannels);
+                }
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "Fail to initialize recorder.");
+                return;
+            }
+
+            // Check Auto-Gain-Control status.
+            if (AutomaticGainControl.isAvailable()) {
+                AutomaticGainControl agc = AutomaticGainControl.create(
+                        record.getAudioSessionId());
+                if (agc.getEnabled())
+                    Log.i(TAG, "SamplingLoop::Run(): AGC: enabled.");
+                else
+                    Log.i(TAG, "SamplingLoop::Run(): AGC: disabled.");
             } else {
-                record = new AudioRecord(analyzerParam.RECORDER_AGC_OFF, analyzerParam.sampleRate, AudioFormat.CHANNEL_IN_MONO,
-                        AudioFormat.ENCODING_PCM_16BIT, analyzerParam.BYTE_OF_SAMPLE * bufferSampleSize);
+                Log.i(TAG, "SamplingLoop::Run(): AGC: not available.");
             }
-        } catch (IllegalArgumentException e) {
-            Log.e(TAG, "Fail to initialize recorder.");
-            return;
-        }
 
-        // Check Auto-Gain-Control status.
-        if (AutomaticGainControl.isAvailable()) {
-            AutomaticGainControl agc = AutomaticGainControl.create(
-                    record.getAudioSessionId());
-            if (agc.getEnabled())
-                Log.i(TAG, "SamplingLoop::Run(): AGC: enabled.");
-            else
-                Log.i(TAG, "SamplingLoop::Run(): AGC: disabled.");
-        } else {
-            Log.i(TAG, "SamplingLoop::Run(): AGC: not available.");
+            Log.i(TAG, "SamplingLoop::Run(): Starting recorder... \n" +
+                    "  source          : " + analyzerParam.getAudioSourceName() + "\n" +
+                    String.format("  channels        : %d\n", nChannels) +
+                    String.format("  sample rate     : %d Hz (request %d Hz)\n", record.getSampleRate(), analyzerParam.sampleRate) +
+                    String.format("  min buffer size : %d samples, %d Bytes\n", minBytes / analyzerParam.BYTE_OF_SAMPLE, minBytes) +
+                    String.format("  buffer size     : %d samples, %d Bytes\n", bufferSampleSize, analyzerParam.BYTE_OF_SAMPLE*bufferSampleSize) +
+                    String.format("  FFT length      : %d\n", analyzerParam.fftLen) +
+                    String.format("  nFFTAverage     : %d\n", analyzerParam.nFFTAverage));
+
+            if (record.getState() == AudioRecord.STATE_UNINITIALIZED) {
+                Log.e(TAG, "SamplingLoop::run(): Fail to initialize AudioRecord()");
+                return;
+            }
+            source = new AudioRecordSource(record);
         }
+        final int nChannels = source.getChannelCount();
+        analyzerParam.sampleRate = source.getSampleRate();
+        int readChunkSize    = analyzerParam.hopLen;  // Every hopLen one fft result (overlapped analyze window)
+        readChunkSize        = Math.min(readChunkSize, 2048) * nChannels;  // read in a smaller chunk, hopefully smaller delay
 
-        Log.i(TAG, "SamplingLoop::Run(): Starting recorder... \n" +
-                "  source          : " + analyzerParam.getAudioSourceName() + "\n" +
-                String.format("  sample rate     : %d Hz (request %d Hz)\n", record.getSampleRate(), analyzerParam.sampleRate) +
-                String.format("  min buffer size : %d samples, %d Bytes\n", minBytes / analyzerParam.BYTE_OF_SAMPLE, minBytes) +
-                String.format("  buffer size     : %d samples, %d Bytes\n", bufferSampleSize, analyzerParam.BYTE_OF_SAMPLE*bufferSampleSize) +
-                String.format("  read chunk size : %d samples, %d Bytes\n", readChunkSize, analyzerParam.BYTE_OF_SAMPLE*readChunkSize) +
-                String.format("  FFT length      : %d\n", analyzerParam.fftLen) +
-                String.format("  nFFTAverage     : %d\n", analyzerParam.nFFTAverage));
-        analyzerParam.sampleRate = record.getSampleRate();
-
-        if (record.getState() == AudioRecord.STATE_UNINITIALIZED) {
-            Log.e(TAG, "SamplingLoop::run(): Fail to initialize AudioRecord()");
-            return;
-        }
+        pipeline = new AnalysisPipeline(analyzerParam, nChannels, new MessageDecoder.Output() {
+            @Override
+            public void append(String text) {
+                appendToDecodedMessage(text);
+            }
 
-        short[] audioSamples = new short[readChunkSize];
-        int numOfReadShort;
+            @Override
+            public void messageDecoded(String message, boolean valid) {
+            }
+        }, new AnalysisPipeline.Listener() {
+            @Override
+            public void spectrumReady(double[] spectrumDB) {
+                // Update spectrum or spectrogram, shown with the next display frame
+                ui.publishSpectrum(pipeline.getChannelPlan(), spectrumDB);
+                ui.publishState(pipeline.isReceiving() ? "Info: Receiving message..." : "Info: Waiting for message...");
+            }
 
-        ShortTimeFT stft = new ShortTimeFT(analyzerParam);
-        stft.setAWeighting(analyzerParam.isAWeighting);
-        if (spectrumDBcopy == null || spectrumDBcopy.length != analyzerParam.fftLen/2+1) {
-            spectrumDBcopy = new double[analyzerParam.fftLen/2+1];
-        }
+            @Override
+            public void standbyChanged(boolean standby) {
+                if (standby) {
+                    ui.publishState("Info: Standby, listening for a starting signal...");
+                }
+            }
+        });
+        final ChannelPlan channelPlan = pipeline.getChannelPlan();
+
+        // about one second of samples between the capture thread and this thread
+        CaptureRing ring = new CaptureRing(analyzerParam.sampleRate * nChannels, analyzerParam.directBuffer);
+        long nOverrunLogged = 0;
+        PipelineMetrics metrics = pipeline.getMetrics();
+        long dumpNanos = (long) (analyzerParam.metricsDumpSeconds * 1e9);
+        long lastDump = System.nanoTime();
+        // created on this thread, it only counts what this thread allocates
+        AllocationMonitor allocationMonitor = analyzerParam.allocationMonitor ? new AllocationMonitor() : null;
 
         RecorderMonitor recorderMonitor = new RecorderMonitor(analyzerParam.sampleRate, bufferSampleSize, "SamplingLoop::run()");
         recorderMonitor.start();
 
         // Start recording
         try {
-            record.startRecording();
+            source.startRecording();
         } catch (IllegalStateException e) {
             Log.e(TAG, "Fail to start recording.");
             return;
         }
+        pipeline.start();
+        CaptureThread captureThread = new CaptureThread(source, ring, recorderMonitor, readChunkSize, nChannels);
+        captureThread.start();
 
         // Main loop
         // When running in this loop (including when paused), you can not change properties
         // related to recorder: e.g. audioSourceId, sampleRate, bufferSampleSize
+        // The capture thread reads the recorder, this thread only analyses what is in the ring.
 
         while (isRunning) {
-            // Read data
-            numOfReadShort = record.read(audioSamples, 0, readChunkSize);   // pulling
+            int numOfReadShort = Math.min(ring.readable(), readChunkSize);
+            numOfReadShort -= numOfReadShort % nChannels;   // whole frames only
+            if (numOfReadShort == 0) {
+                LockSupport.parkNanos(PARK_NANOS);   // woken up by the capture thread
+                continue;
+            }
 
             if (recordingIsPaused) {
-                // keep reading data for overrun checker
+                // the capture thread keeps reading for the overrun checker, nothing to analyse
+                int n = ring.readable();
+                ring.release(n);
+                metrics.consumed(n);
                 continue;
             }
 
-            stft.feedData(audioSamples, numOfReadShort);
-
-            // If there is new spectrum data, do plot
-            if (stft.nElemSpectrumAmp() >= analyzerParam.nFFTAverage) {
-                // Update spectrum or spectrogram
-                final double[] spectrumDB = stft.getSpectrumAmpDB();
-                System.arraycopy(spectrumDB, 0, spectrumDBcopy, 0, spectrumDB.length);
-
-                activity.runOnUiThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        activity.frequenciesTextVisualization.setText(
-                            "Phase       : " + convertValuesIntoSigns(spectrumDBcopy[204]) + "\n" +
-                            "17.8 kHz ([): " + convertValuesIntoSigns(spectrumDBcopy[207]) + "\n" +
-                            "18.0 kHz (0): " + convertValuesIntoSigns(spectrumDBcopy[209]) + "\n" +
-                            "18.2 kHz (1): " + convertValuesIntoSigns(spectrumDBcopy[211]) + "\n" +
-                            "18.4 kHz (2): " + convertValuesIntoSigns(spectrumDBcopy[214]) + "\n" +
-                            "18.6 kHz (3): " + convertValuesIntoSigns(spectrumDBcopy[216]) + "\n" +
-                            "18.8 kHz (4): " + convertValuesIntoSigns(spectrumDBcopy[218]) + "\n" +
-                            "19.0 kHz (5): " + convertValuesIntoSigns(spectrumDBcopy[221]) + "\n" +
-                            "19.2 kHz (6): " + convertValuesIntoSigns(spectrumDBcopy[223]) + "\n" +
-                            "19.4 kHz (7): " + convertValuesIntoSigns(spectrumDBcopy[225]) + "\n" +
-                            "19.6 kHz (8): " + convertValuesIntoSigns(spectrumDBcopy[228]) + "\n" +
-                            "19.8 kHz (9): " + convertValuesIntoSigns(spectrumDBcopy[230]) + "\n" +
-                            "20.0 kHz (]): " + convertValuesIntoSigns(spectrumDBcopy[232])
-                        );
-                        if (messageStarted) {
-                            activity.currentState.setText("Info: Receiving message...");
-                            //activity.currentState.setText("Message: \n" + Arrays.toString(frequencyMaxAmount));
-                        } else {
-                            activity.currentState.setText("Info: Waiting for message...");
-                        }
-                    }
-                });
-
-                // update recent value list every 50ms
-                if (SystemClock.uptimeMillis()-lastUpdate > 50) {
-                    //Log.i(TAG, "SamplingLoop::Run(): measurement " + maxCounter);
-                    lastUpdate = SystemClock.uptimeMillis();
-                    // average value from 15.8 kHz to 16.8 kHz
-                    int averageComparison = (int) ((spectrumDBcopy[183]+spectrumDBcopy[186]+spectrumDBcopy[188]+spectrumDBcopy[190]+spectrumDBcopy[193]+spectrumDBcopy[195])/6);
-                    //int averageMain = (int) ((spectrumDBcopy[204]+spectrumDBcopy[207]+spectrumDBcopy[209]+spectrumDBcopy[211]+spectrumDBcopy[214]+spectrumDBcopy[216]+spectrumDBcopy[218]+spectrumDBcopy[221]+spectrumDBcopy[223]+spectrumDBcopy[225]+spectrumDBcopy[228]+spectrumDBcopy[230]+spectrumDBcopy[232])/13);
-                    int[] valuesFrequency = new int[13];
-                    // assign values for 17 kHz (phase)  and target frequencies 17.8 kHz to 20 kHz
-                    valuesFrequency[0] = (int) spectrumDBcopy[197];
-                    valuesFrequency[1] = (int) spectrumDBcopy[207];
-                    valuesFrequency[2] = (int) spectrumDBcopy[209];
-                    valuesFrequency[3] = (int) spectrumDBcopy[211];
-                    valuesFrequency[4] = (int) spectrumDBcopy[214];
-                    valuesFrequency[5] = (int) spectrumDBcopy[216];
-                    valuesFrequency[6] = (int) spectrumDBcopy[218];
-                    valuesFrequency[7] = (int) spectrumDBcopy[221];
-                    valuesFrequency[8] = (int) spectrumDBcopy[223];
-                    valuesFrequency[9] = (int) spectrumDBcopy[225];
-                    valuesFrequency[10] = (int) spectrumDBcopy[228];
-                    valuesFrequency[11] = (int) spectrumDBcopy[230];
-                    valuesFrequency[12] = (int) spectrumDBcopy[232];
-
-                    boolean phaseSignal = false;
-
-                    // get the maximum value of phase and target frequencies and the index in the array
-                    int[] maxValueAndIndexCurrent = getMaxValueAndIndex(valuesFrequency);
-
-                    // if the maximum value is higher than the average of the comparison frequencies * 0.9
-                    if (maxValueAndIndexCurrent[0] > (int) (averageComparison * 0.9)) {
-                        // increase the counter in the amount-of-maxima array
-                        frequencyMaxAmount[maxValueAndIndexCurrent[1]]++;
-
-                        // if current maximum is phase frequency
-                        if (maxValueAndIndexCurrent[1] == 0) {
-                            // set phaseSignal to true
-                            phaseSignal = true;
-                            //Log.i(TAG, "SamplingLoop::Run(): maxValue: " + maxValueAndIndexCurrent[0]);
-                            //Log.i(TAG, "SamplingLoop::Run(): averageComparison * 0.9: " + (int) (averageComparison * 0.9));
-                            //Log.i(TAG, "SamplingLoop::Run(): averageMain: " + averageMain * 0.7);
-                            // && maxValueAndIndexCurrent[0] > averageMain * 0.7
-                        }
-                    }
-
-                    maxCounter++;
-
-                    // get the amount of maxima of the phase or target frequency with the most maxima and the index in the array
-                    int[] maxValueAndIndexOverall = getMaxValueAndIndex(frequencyMaxAmount);
-
-                    if (messageStarted) {
-                        //Log.i(TAG, "SamplingLoop::Run(): maxValueAndIndexOverall: (" + maxValueAndIndexOverall[0] + "," + maxValueAndIndexOverall[1] +")");
-                    }
-
-                    // if the amount of maxima is equal to a certain threshold or the phaseSignal
-                    if ((maxValueAndIndexOverall[0] == 4 && !waitForNextRound) || phaseSignal) {
-
-                        String newFrequency = "";
-
-                        if (phaseSignal) {
-                            newFrequency = "";
-                        } else {
-                            waitForNextRound = true;
-                            switch (maxValueAndIndexOverall[1]) {
-                                case 1:
-                                    if (! messageStarted) {
-                                        messageStarted = true;
-                                        newFrequency = "\n[";
-                                    } break;
-                                case 2:
-                                    //newFrequency = "18.0 ";
-                                    newFrequency = "0"; break;
-                                case 3:
-                                    //newFrequency = "18.2 ";
-                                    newFrequency = "1"; break;
-                                case 4:
-                                    //newFrequency = "18.4 ";
-                                    newFrequency = "2"; break;
-                                case 5:
-                                    //newFrequency = "18.6 ";
-                                    newFrequency = "3"; break;
-                                case 6:
-                                    //newFrequency = "18.8 ";
-                                    newFrequency = "4"; break;
-                                case 7:
-                                    //newFrequency = "19.0 ";
-                                    newFrequency = "5"; break;
-                                case 8:
-                                    //newFrequency = "19.2 ";
-                                    newFrequency = "6"; break;
-                                case 9:
-                                    //newFrequency = "19.4 ";
-                                    newFrequency = "7"; break;
-                                case 10:
-                                    //newFrequency = "19.6 ";
-                                    newFrequency = "8"; break;
-                                case 11:
-                                    //newFrequency = "19.8 ";
-                                    newFrequency = "9"; break;
-                                case 12:
-                                    if (messageStarted) {
-                                        decodeMessage();
-                                        messageStarted = false;
-                                    } break;
-                                default:
-                                    break;
-                            }
-                        }
-
-                        if (messageStarted || phaseSignal) {
-                            appendToDecodedMessage(newFrequency);
-                        }
-                    }
+            boolean overrun = ring.getOverrunSamples() != nOverrunLogged;
+            if (overrun) {
+                Log.w(TAG, "SamplingLoop::run(): analysis too slow, " + (ring.getOverrunSamples() - nOverrunLogged)
+                        + " samples dropped.");
+                nOverrunLogged = ring.getOverrunSamples();
+            }
 
-                    if (maxCounter == 10 || phaseSignal) { // reset maxCounter after 10 x 50 ms or when phase signal is detected
-                        if (messageStarted) {
-                            //Log.i(TAG, "SamplingLoop::Run(): phaseSignal: " + phaseSignal);
-                            //Log.i(TAG, "SamplingLoop::Run(): maxCounter: " + maxCounter);
-                            //Log.i(TAG, "SamplingLoop::Run(): maxValueAndIndexOverall[0]: " + maxValueAndIndexOverall[0]);
-                            //Log.i(TAG, "---------------------------------------------");
-                        }
-                        // maxCounter >= 3, because signal needs to have a certain length and is not supposed to be a phase signal (max. length 2)
-                        if (messageStarted && maxCounter >= 3 && maxValueAndIndexOverall[0] < 4 && maxValueAndIndexOverall[1] != 1) {
-                            appendToDecodedMessage("_");
-                        }
-                        maxCounter = 0;
-                        waitForNextRound = false;
-                        frequencyMaxAmount = new int[13];
-                    }
+            boolean fallingBehind = overrun || ring.available() > ring.capacity() / 2;
+            if (ring.isDirect()) {
+                pipeline.process(ring.samples(), ring.readOffset(), numOfReadShort, fallingBehind);
+            } else {
+                pipeline.process(ring.array(), ring.readOffset(), numOfReadShort, fallingBehind);
+            }
+            ring.release(numOfReadShort);
+            metrics.consumed(numOfReadShort);
+
+            if (dumpNanos > 0 && System.nanoTime() - lastDump > dumpNanos) {
+                Log.i(TAG, "SamplingLoop::run(): " + metrics.dump());
+                if (allocationMonitor != null) {
+                    allocationMonitor.update();
+                    Log.i(TAG, "SamplingLoop::run(): " + allocationMonitor);
                 }
+                lastDump = System.nanoTime();
             }
         }
-        Log.i(TAG, "SamplingLoop::Run(): Actual sample rate: " + recorderMonitor.getSampleRate());
-        Log.i(TAG, "SamplingLoop::Run(): Stopping and releasing recorder.");
-        activity.runOnUiThread(new Runnable() {
-           @Override
-           public void run() {
-               activity.frequenciesTextVisualization.setText(
-                       "Phase       :\n" +
-                       "17.8 kHz ([):\n" +
-                       "18.0 kHz (0):\n" +
-                       "18.2 kHz (1):\n" +
-                       "18.4 kHz (2):\n" +
-                       "18.6 kHz (3):\n" +
-                       "18.8 kHz (4):\n" +
-                       "19.0 kHz (5):\n" +
-                       "19.2 kHz (6):\n" +
-                       "19.4 kHz (7):\n" +
-                       "19.6 kHz (8):\n" +
-                       "19.8 kHz (9):\n" +
-                       "20.0 kHz (]):"
-               );
-               activity.currentState.setText("Info: Please start recording :)");
-           }
-        });
-        record.stop();
-        record.release();
-    }
-
-    private String convertValuesIntoSigns (double value) {
-        String str = "|";
-        if (value < -100) {
-            return str;
-        } else if (value < -95) {
-            return new String(new char[1]).replace("\0", str);
-        } else if (value < -90) {
-            return new String(new char[2]).replace("\0", str);
-        } else if (value < -85) {
-            return new String(new char[3]).replace("\0", str);
-        } else if (value < -80) {
-            return new String(new char[4]).replace("\0", str);
-        } else if (value < -75) {
-            return new String(new char[5]).replace("\0", str);
-        } else if (value < -70) {
-            return new String(new char[6]).replace("\0", str);
-        } else if (value < -65) {
-            return new String(new char[7]).replace("\0", str);
-        } else if (value < -60) {
-            return new String(new char[8]).replace("\0", str);
-        } else if (value < -55) {
-            return new String(new char[9]).replace("\0", str);
-        } else if (value < -50) {
-            return new String(new char[10]).replace("\0", str);
-        } else if (value < -45) {
-            return new String(new char[11]).replace("\0", str);
-        } else if (value < -40) {
-            return new String(new char[12]).replace("\0", str);
-        } else if (value < -35) {
-            return new String(new char[13]).replace("\0", str);
-        } else if (value < -30) {
-            return new String(new char[14]).replace("\0", str);
-        } else if (value > -20) {
-            return new String(new char[15]).replace("\0", str);
-        } else {
-            return "";
+        try {
+            captureThread.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
         }
-    }
-
-    private int[] getMaxValueAndIndex (int[] values) {
-
-        int max = values[0];
-        int index = 0;
-
-        for (int i = 0; i < values.length; i++) {
-            if (max < values[i])
-            {
-                max = values[i];
-                index = i;
-            }
+        pipeline.finish();
+        Log.i(TAG, "SamplingLoop::Run(): " + metrics.dump());
+        if (allocationMonitor != null) {
+            allocationMonitor.update();
+            Log.i(TAG, "SamplingLoop::Run(): " + allocationMonitor);
+            allocationMonitor.stop();
         }
-
-        return new int[]{max, index};
+        if (ring.getOverrunSamples() > 0) {
+            Log.w(TAG, "SamplingLoop::Run(): " + ring.getOverrunSamples() + " samples dropped in total.");
+        }
+        Log.i(TAG, "SamplingLoop::Run(): Actual sample rate: " + recorderMonitor.getSampleRate());
+        Log.i(TAG, "SamplingLoop::Run(): Stopping and releasing recorder.");
+        ui.publishSpectrum(channelPlan, null);
+        ui.publishState("Info: Please start recording :)");
+        source.stop();
+        source.release();
     }
 
     private void appendToDecodedMessage(String newFrequency) {
-        final String frequency = newFrequency;
-        Log.i(TAG, "SamplingLoop::Run(): added: " + frequency);
-        activity.runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                activity.decodedMessage.append(frequency);
-            }
-        });
-    }
-
-    private void decodeMessage() {
-        String codedMessage = activity.decodedMessage.getText().toString();
-
-        int startMessage = codedMessage.lastIndexOf("[");
-        int endMessage = codedMessage.length();
-
-        String message = codedMessage.substring(startMessage+1, endMessage);
-        int messageLength = message.length();
-
-        if (messageLength % 2 == 1) { // in case the length of the message is not even, add a "-" at the end, to provide an even message length
-            messageLength += 1;
-            message = message.concat("_");
-        }
-
-        StringBuffer decodedMessage = new StringBuffer(20);
-        for (int i = 0; i < messageLength/2; i++) {
-            String encodedCharacter = message.substring(2*i, 2*i+2);
-            Log.i(TAG, "SamplingLoop::decodeMessage(): encodedCharacter: " + encodedCharacter);
-            if (encodedCharacter.contains("_")) {
-                encodedCharacter = "_";
-            } else {
-                switch (Integer.parseInt(encodedCharacter)) {
-                    case 65:
-                        encodedCharacter = "A"; break;
-                    case 66:
-                        encodedCharacter = "B"; break;
-                    case 67:
-                        encodedCharacter = "C"; break;
-                    case 68:
-                        encodedCharacter = "D"; break;
-                    case 69:
-                        encodedCharacter = "E"; break;
-                    case 70:
-                        encodedCharacter = "F"; break;
-                    case 71:
-                        encodedCharacter = "G"; break;
-                    case 72:
-                        encodedCharacter = "H"; break;
-                    case 73:
-                        encodedCharacter = "I"; break;
-                    case 74:
-                        encodedCharacter = "J"; break;
-                    case 75:
-                        encodedCharacter = "K"; break;
-                    case 76:
-                        encodedCharacter = "L"; break;
-                    case 77:
-                        encodedCharacter = "M"; break;
-                    case 78:
-                        encodedCharacter = "N"; break;
-                    case 79:
-                        encodedCharacter = "O"; break;
-                    case 80:
-                        encodedCharacter = "P"; break;
-                    case 81:
-                        encodedCharacter = "Q"; break;
-                    case 82:
-                        encodedCharacter = "R"; break;
-                    case 83:
-                        encodedCharacter = "S"; break;
-                    case 84:
-                        encodedCharacter = "T"; break;
-                    case 85:
-                        encodedCharacter = "U"; break;
-                    case 86:
-                        encodedCharacter = "V"; break;
-                    case 87:
-                        encodedCharacter = "W"; break;
-                    case 88:
-                        encodedCharacter = "X"; break;
-                    case 89:
-                        encodedCharacter = "Y"; break;
-                    case 90:
-                        encodedCharacter = "Z"; break;
-                    default:
-                        encodedCharacter = "_"; break;
-                }
-            }
-            decodedMessage.append(encodedCharacter);
-        }
-
-        final String decodedMessageFinal = decodedMessage.toString();
-        activity.runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                activity.decodedMessage.append("] = " + decodedMessageFinal);
-            }
-        });
+        Log.i(TAG, "SamplingLoop::Run(): added: " + newFrequency);
+        ui.appendText(newFrequency);
     }
 
     void finish() {
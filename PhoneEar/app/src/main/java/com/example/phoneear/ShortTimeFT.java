@@ -19,7 +19,10 @@ import android.util.Log;
 
 import com.google.corp.productivity.specialprojects.android.fft.RealDoubleFFT;
 
+import java.nio.ShortBuffer;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import static java.lang.Math.PI;
 import static java.lang.Math.abs;
@@ -49,10 +52,18 @@ class ShortTimeFT {
     private int fftLen;
     private int hopLen;                           // control overlap of FFTs = (1 - lopLen/fftLen)*100%
     private int spectrumAmpPt;
+    private boolean windowOnFeed;                 // hopLen >= fftLen: no overlap is kept, so the samples are
+                                                  // windowed straight into the FFT buffer spectrumAmpInTmp
 //    private double[][] spectrumAmpOutArray;
 //    private int spectrumAmpOutArrayPt = 0;        // Pointer for spectrumAmpOutArray
     private int nAnalysed = 0;
     private RealDoubleFFT spectrumAmpFFT;
+    // FFT plans (wavenumber tables) by length, shared by all instances, e.g. the tasks of BatchDecoder
+    private static final Map<Integer, RealDoubleFFT> fftPlans = new HashMap<>();
+    private FftWorker[] workers;                  // null: the FFTs run on the feeding thread
+    private int channel = 0;                      // interleaved input: analyse this channel of nChannels
+    private int nChannels = 1;
+    private int nextWorker;
     private boolean boolAWeighting = false;
     private double cumRMS = 0;
     private int    cntRMS = 0;
@@ -180,6 +191,26 @@ class ShortTimeFT {
         wndEnergyFactor = wnd.length / wndEnergyFactor;
     }
 
+    // Change the overlap, e.g. by the CpuGovernor. Starts over with an empty input buffer.
+    void setHopLen(int _hopLen) {
+        if (_hopLen <= 0) {
+            throw new IllegalArgumentException("STFT::setHopLen(): should hopLen >= 1.");
+        }
+        hopLen = _hopLen;
+        windowOnFeed = hopLen >= fftLen && workers == null;
+        spectrumAmpPt = 0;
+    }
+
+    // Interleaved input (e.g. stereo): only every nChannels-th sample from channel on is analysed.
+    // The lengths given to feedData() stay in samples of all channels.
+    void setChannel(int channel, int nChannels) {
+        if (channel < 0 || channel >= nChannels) {
+            throw new IllegalArgumentException("STFT::setChannel(): need 0 <= channel < nChannels.");
+        }
+        this.channel = channel;
+        this.nChannels = nChannels;
+    }
+
     void setAWeighting(boolean e_isAWeighting) {
         boolAWeighting = e_isAWeighting;
     }
@@ -199,13 +230,14 @@ class ShortTimeFT {
         this.sampleRate = sampleRate;
         fftLen = fftlen;
         hopLen = _hopLen;                          // 50% overlap by default
+        windowOnFeed = hopLen >= fftLen;
         spectrumAmpOutCum= new double[fftlen/2+1];
         spectrumAmpOutTmp= new double[fftlen/2+1];
         spectrumAmpOut   = new double[fftlen/2+1];
         spectrumAmpOutDB = new double[fftlen/2+1];
         spectrumAmpIn    = new double[fftlen];
         spectrumAmpInTmp = new double[fftlen];
-        spectrumAmpFFT   = new RealDoubleFFT(spectrumAmpIn.length);
+        spectrumAmpFFT   = newFFT(spectrumAmpIn.length);
 //        spectrumAmpOutArray = new double[(int)ceil((double)minFeedSize / (fftlen/2))][]; // /2 since half overlap
 //        for (int i = 0; i < spectrumAmpOutArray.length; i++) {
 //            spectrumAmpOutArray[i] = new double[fftlen/2+1];
@@ -217,6 +249,24 @@ class ShortTimeFT {
         boolAWeighting = false;
     }
 
+    // A transform of length n with the shared plan, only the work array is new.
+    private static RealDoubleFFT newFFT(int n) {
+        RealDoubleFFT plan;
+        synchronized (fftPlans) {
+            plan = fftPlans.get(n);
+            if (plan == null) {
+                plan = new RealDoubleFFT(n);
+                fftPlans.put(n, plan);
+            }
+        }
+        return new RealDoubleFFT(plan);
+    }
+
+    // without calibration, e.g. for tests and benchmarks
+    ShortTimeFT(int fftLen, int hopLen, int sampleRate, int nFFTAverage, String wndName) {
+        init(fftLen, hopLen, sampleRate, nFFTAverage, wndName);
+    }
+
     ShortTimeFT(AnalyzerParameters analyzerParam) {
         init(analyzerParam.fftLen, analyzerParam.hopLen, analyzerParam.sampleRate, analyzerParam.nFFTAverage, analyzerParam.wndFuncName);
         if (analyzerParam.micGainDB != null) {
@@ -237,49 +287,244 @@ class ShortTimeFT {
     }
 
     void feedData(short[] ds, int dsLen) {
-        if (dsLen > ds.length) {
-            Log.e("STFT", "dsLen > ds.length !");
-            dsLen = ds.length;
+        feedData(ds, 0, dsLen);
+    }
+
+    // Feed dsLen samples starting at ds[offset], e.g. straight from the CaptureRing.
+    void feedData(short[] ds, int offset, int dsLen) {
+        if (offset + dsLen > ds.length) {
+            Log.e("STFT", "offset + dsLen > ds.length !");
+            dsLen = ds.length - offset;
+        }
+        int inLen = spectrumAmpIn.length;
+        int dsPt = offset + channel;    // input data point to be read
+        int dsEnd = offset + dsLen;
+        while (dsPt < dsEnd) {
+            while (spectrumAmpPt < 0 && dsPt < dsEnd) {  // skip data when hopLen > fftLen
+                double s = ds[dsPt] / 32768.0;
+                dsPt += nChannels;
+                spectrumAmpPt++;
+                cumRMS += s*s;
+                cntRMS++;
+            }
+            while (spectrumAmpPt < inLen && dsPt < dsEnd) {
+                double s = ds[dsPt] / 32768.0;
+                dsPt += nChannels;
+                if (windowOnFeed) {
+                    spectrumAmpInTmp[spectrumAmpPt] = s * wnd[spectrumAmpPt];
+                } else {
+                    spectrumAmpIn[spectrumAmpPt] = s;
+                }
+                spectrumAmpPt++;
+                cumRMS += s*s;
+                cntRMS++;
+            }
+            if (spectrumAmpPt == inLen) {    // enough data for one FFT
+                analyse();
+            }
+        }
+    }
+
+    // Same as feedData(short[], int, int) for samples in a ShortBuffer, e.g. a direct buffer
+    // the recorder wrote into. Reads with absolute get(), the position of ds is not changed.
+    void feedData(ShortBuffer ds, int offset, int dsLen) {
+        if (offset + dsLen > ds.limit()) {
+            Log.e("STFT", "offset + dsLen > ds.limit() !");
+            dsLen = ds.limit() - offset;
         }
         int inLen = spectrumAmpIn.length;
-        int outLen = spectrumAmpOut.length;
-        int dsPt = 0;           // input data point to be read
-        while (dsPt < dsLen) {
-            while (spectrumAmpPt < 0 && dsPt < dsLen) {  // skip data when hopLen > fftLen
-                double s = ds[dsPt++] / 32768.0;
+        int dsPt = offset + channel;    // input data point to be read
+        int dsEnd = offset + dsLen;
+        while (dsPt < dsEnd) {
+            while (spectrumAmpPt < 0 && dsPt < dsEnd) {  // skip data when hopLen > fftLen
+                double s = ds.get(dsPt) / 32768.0;
+                dsPt += nChannels;
                 spectrumAmpPt++;
                 cumRMS += s*s;
                 cntRMS++;
             }
-            while (spectrumAmpPt < inLen && dsPt < dsLen) {
-                double s = ds[dsPt++] / 32768.0;
-                spectrumAmpIn[spectrumAmpPt++] = s;
+            while (spectrumAmpPt < inLen && dsPt < dsEnd) {
+                double s = ds.get(dsPt) / 32768.0;
+                dsPt += nChannels;
+                if (windowOnFeed) {
+                    spectrumAmpInTmp[spectrumAmpPt] = s * wnd[spectrumAmpPt];
+                } else {
+                    spectrumAmpIn[spectrumAmpPt] = s;
+                }
+                spectrumAmpPt++;
                 cumRMS += s*s;
                 cntRMS++;
             }
             if (spectrumAmpPt == inLen) {    // enough data for one FFT
+                analyse();
+            }
+        }
+    }
+
+    // One FFT of the full input buffer, accumulated for the average.
+    private void analyse() {
+        int inLen = spectrumAmpIn.length;
+        if (workers != null) {
+            // round-robin: collect the previous result of the worker first, so results stay in frame order
+            FftWorker worker = workers[nextWorker];
+            nextWorker = (nextWorker + 1) % workers.length;
+            if (worker.busy) {
+                accumulate(worker.collect());
+            }
+            worker.submit(spectrumAmpIn);
+        } else {
+            if (! windowOnFeed) {
                 for (int i = 0; i < inLen; i++) {
                     spectrumAmpInTmp[i] = spectrumAmpIn[i] * wnd[i];
                 }
-                spectrumAmpFFT.ft(spectrumAmpInTmp);
-                fftToAmp(spectrumAmpOutTmp, spectrumAmpInTmp);
-//                System.arraycopy(spectrumAmpOutTmp, 0, spectrumAmpOutArray[spectrumAmpOutArrayPt], 0,
-//                                 spectrumAmpOutTmp.length);
-//                spectrumAmpOutArrayPt = (spectrumAmpOutArrayPt+1) % spectrumAmpOutArray.length;
-                for (int i = 0; i < outLen; i++) {
-                    spectrumAmpOutCum[i] += spectrumAmpOutTmp[i];
+            }
+            spectrumAmpFFT.ft(spectrumAmpInTmp);
+            fftToAmp(spectrumAmpOutTmp, spectrumAmpInTmp);
+//            System.arraycopy(spectrumAmpOutTmp, 0, spectrumAmpOutArray[spectrumAmpOutArrayPt], 0,
+//                             spectrumAmpOutTmp.length);
+//            spectrumAmpOutArrayPt = (spectrumAmpOutArrayPt+1) % spectrumAmpOutArray.length;
+            accumulate(spectrumAmpOutTmp);
+        }
+        if (hopLen < fftLen) {
+            System.arraycopy(spectrumAmpIn, hopLen, spectrumAmpIn, 0, fftLen - hopLen);
+        }
+        spectrumAmpPt = fftLen - hopLen;  // can be positive and negative
+    }
+
+    private void accumulate(double[] amp) {
+        for (int i = 0; i < spectrumAmpOutCum.length; i++) {
+            spectrumAmpOutCum[i] += amp[i];
+        }
+        nAnalysed++;
+    }
+
+    // Run the FFTs of successive frames on n worker threads, for high overlap with a long FFT.
+    // Each worker has its own FFT and buffers. Results arrive n - 1 frames later than on one thread.
+    void startWorkers(int n) {
+        stopWorkers();
+        if (n <= 1) {
+            return;
+        }
+        workers = new FftWorker[n];
+        for (int i = 0; i < n; i++) {
+            workers[i] = new FftWorker(i, wnd);
+            workers[i].start();
+        }
+        nextWorker = 0;
+        windowOnFeed = false;   // the workers window their own copy of the frame
+    }
+
+    void stopWorkers() {
+        if (workers == null) {
+            return;
+        }
+        for (FftWorker worker : workers) {
+            worker.quit();
+        }
+        for (FftWorker worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        workers = null;
+        windowOnFeed = hopLen >= fftLen;
+    }
+
+    // Drop the frames that are still in the workers.
+    private void discardWorkers() {
+        if (workers != null) {
+            for (FftWorker worker : workers) {
+                if (worker.busy) {
+                    worker.collect();
+                }
+            }
+            nextWorker = 0;
+        }
+    }
+
+    private static class FftWorker extends Thread {
+        private final double[] wnd;
+        private final double[] in;
+        private final double[] tmp;
+        private final double[] out;
+        private final RealDoubleFFT fft;
+        private boolean hasWork;
+        private boolean done;
+        private boolean quit;
+        boolean busy;           // submitted and not collected yet, only used by the feeding thread
+
+        FftWorker(int index, double[] wnd) {
+            super("STFT-" + index);
+            this.wnd = wnd;
+            in = new double[wnd.length];
+            tmp = new double[wnd.length];
+            out = new double[wnd.length / 2 + 1];
+            fft = newFFT(wnd.length);
+        }
+
+        synchronized void submit(double[] frame) {
+            System.arraycopy(frame, 0, in, 0, in.length);
+            hasWork = true;
+            busy = true;
+            notifyAll();
+        }
+
+        // Waits for the result, which is valid until the next submit().
+        synchronized double[] collect() {
+            boolean interrupted = false;
+            while (! done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;     // the FFT is finished soon, keep the frame order
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            done = false;
+            busy = false;
+            return out;
+        }
+
+        synchronized void quit() {
+            quit = true;
+            notifyAll();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                synchronized (this) {
+                    while (! hasWork && ! quit) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (quit) {
+                        return;
+                    }
+                    hasWork = false;
+                }
+                for (int i = 0; i < in.length; i++) {
+                    tmp[i] = in[i] * wnd[i];
                 }
-                nAnalysed++;
-                if (hopLen < fftLen) {
-                    System.arraycopy(spectrumAmpIn, hopLen, spectrumAmpIn, 0, fftLen - hopLen);
+                fft.ft(tmp);
+                fftToAmp(out, tmp);
+                synchronized (this) {
+                    done = true;
+                    notifyAll();
                 }
-                spectrumAmpPt = fftLen - hopLen;  // can be positive and negative
             }
         }
     }
 
     // Convert complex amplitudes to absolute amplitudes.
-    private void fftToAmp(double[] dataOut, double[] data) {
+    private static void fftToAmp(double[] dataOut, double[] data) {
         // data.length should be a even number
         double scaler = 2.0*2.0 / (data.length * data.length);  // *2 since there are positive and negative frequency part
         dataOut[0] = data[0]*data[0] * scaler / 4.0;
@@ -386,6 +631,7 @@ class ShortTimeFT {
     }
 
     void clear() {
+        discardWorkers();
         spectrumAmpPt = 0;
         Arrays.fill(spectrumAmpOut, 0.0);
         Arrays.fill(spectrumAmpOutDB, log10(0));
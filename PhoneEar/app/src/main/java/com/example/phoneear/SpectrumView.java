@@ -0,0 +1,204 @@
+package com.example.phoneear;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+
+/*
+Sources:
+https://developer.android.com/training/custom-views/custom-drawing
+https://developer.android.com/reference/android/graphics/Bitmap#setPixels(int[],%20int,%20int,%20int,%20int,%20int,%20int)
+https://github.com/bewantbe/audio-analyzer-for-android (spectrogram)
+ */
+
+/**
+ * Level of every carrier and a scrolling spectrogram of the band of the protocol, drawn directly
+ * on the canvas. Upper part: one bar per carrier with its label, the comparison level as a line
+ * across the bars. Lower part: the band from the lowest comparison frequency to the ending signal,
+ * frequency upwards, the newest spectrum on the right.
+ *
+ * setSpectrum() keeps the carrier levels as floats and writes one column of the spectrogram into a
+ * ring bitmap; onDraw() only draws bars, the line and the bitmap in two pieces. Paints, the path,
+ * the rectangles and the pixel column are allocated with the view, the bitmap when the channel plan
+ * changes, so setSpectrum() and onDraw() do not allocate while receiving. Call them on the UI thread.
+ */
+public class SpectrumView extends View {
+    private static final float MIN_DB = -100;     // empty bar, dark spectrogram
+    private static final float MAX_DB = -20;      // full bar
+    private static final int HISTORY = 256;       // columns of the spectrogram, one per spectrum
+    private static final float LEVELS_PART = 0.55f;   // of the height, the rest is the spectrogram
+
+    private final Paint barPaint = new Paint();
+    private final Paint backgroundPaint = new Paint();
+    private final Paint referencePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint bitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Path referencePath = new Path();
+    private final Rect src = new Rect();
+    private final Rect dst = new Rect();
+    private final int[] palette = new int[256];
+
+    private ChannelPlan channelPlan;
+    private float[] levelsDB = new float[0];      // NaN: no level
+    private float referenceDB = Float.NaN;
+    private float labelWidth;
+
+    private Bitmap spectrogram;                   // HISTORY x band bins, null without a plan
+    private int[] column;                         // pixels of one spectrum, highest frequency first
+    private int lowBin, highBin;                  // band of the spectrogram
+    private int nextColumn;                       // where the next spectrum goes, ring position
+
+    public SpectrumView(Context context) {
+        this(context, null);
+    }
+
+    public SpectrumView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        barPaint.setColor(Color.rgb(0, 133, 119));          // colorPrimary
+        backgroundPaint.setColor(Color.rgb(224, 224, 224));
+        referencePaint.setColor(Color.rgb(216, 27, 96));    // colorAccent
+        referencePaint.setStyle(Paint.Style.STROKE);
+        referencePaint.setStrokeWidth(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 1.5f,
+                getResources().getDisplayMetrics()));
+        labelPaint.setColor(Color.DKGRAY);
+        labelPaint.setTypeface(Typeface.MONOSPACE);
+        labelPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 11,
+                getResources().getDisplayMetrics()));
+        // black over blue and red to yellow, like the spectrogram of the audio analyzer
+        for (int i = 0; i < palette.length; i++) {
+            float x = i / 255f;
+            int r = (int) (255 * clamp(2 * x - 0.5f));
+            int g = (int) (255 * clamp(2 * x - 1));
+            int b = (int) (255 * clamp(x < 0.5f ? 2 * x : 2 - 2 * x));
+            palette[i] = Color.rgb(r, g, b);
+        }
+    }
+
+    private static float clamp(float x) {
+        return Math.max(0, Math.min(1, x));
+    }
+
+    // 0 at MIN_DB and below, 1 at MAX_DB and above
+    private static float fraction(double db) {
+        return (float) Math.max(0, Math.min(1, (db - MIN_DB) / (MAX_DB - MIN_DB)));
+    }
+
+    // A new spectrum; spectrumDB null clears the levels and the spectrogram.
+    void setSpectrum(ChannelPlan channelPlan, double[] spectrumDB) {
+        if (channelPlan != this.channelPlan) {
+            setChannelPlan(channelPlan);
+        }
+        if (spectrumDB == null) {
+            for (int i = 0; i < levelsDB.length; i++) {
+                levelsDB[i] = Float.NaN;
+            }
+            referenceDB = Float.NaN;
+            if (spectrogram != null) {
+                spectrogram.eraseColor(palette[0]);
+            }
+        } else {
+            for (int i = 0; i < levelsDB.length; i++) {
+                levelsDB[i] = (float) channelPlan.carrierLevel(spectrumDB, i);
+            }
+            referenceDB = (float) channelPlan.referenceLevel(spectrumDB);
+            if (spectrogram != null && highBin < spectrumDB.length) {
+                for (int bin = highBin; bin >= lowBin; bin--) {
+                    column[highBin - bin] = palette[(int) (255 * fraction(spectrumDB[bin]))];
+                }
+                spectrogram.setPixels(column, 0, 1, nextColumn, 0, 1, column.length);
+                nextColumn = (nextColumn + 1) % HISTORY;
+            }
+        }
+        invalidate();
+    }
+
+    // Levels and bitmap for another plan, e.g. the one corrected by the frequency tracker.
+    private void setChannelPlan(ChannelPlan channelPlan) {
+        int previousLow = lowBin;
+        int previousHigh = highBin;
+        this.channelPlan = channelPlan;
+        if (levelsDB.length != channelPlan.size()) {
+            levelsDB = new float[channelPlan.size()];
+        }
+        labelWidth = 0;
+        for (int i = 0; i < channelPlan.size(); i++) {
+            labelWidth = Math.max(labelWidth, labelPaint.measureText(channelPlan.getLabel(i)));
+        }
+        double binWidth = (double) channelPlan.getSampleRate() / channelPlan.getFftLen();
+        double lowHz = channelPlan.getCarrierFrequency(ChannelPlan.PHASE);
+        for (int r = 0; r < channelPlan.getReferences(); r++) {
+            lowHz = Math.min(lowHz, channelPlan.getReferenceFrequency(r));
+        }
+        lowBin = Math.max((int) (lowHz / binWidth) - 1, 0);
+        highBin = Math.min((int) (channelPlan.getCarrierFrequency(channelPlan.getEnd()) / binWidth) + 2,
+                channelPlan.getFftLen() / 2);
+        // from the nominal frequencies, so a corrected plan keeps the picture
+        if (spectrogram == null || lowBin != previousLow || highBin != previousHigh) {
+            column = new int[highBin - lowBin + 1];
+            spectrogram = Bitmap.createBitmap(HISTORY, column.length, Bitmap.Config.ARGB_8888);
+            spectrogram.eraseColor(palette[0]);
+            nextColumn = 0;
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (channelPlan == null) {
+            return;
+        }
+        int width = getWidth() - getPaddingLeft() - getPaddingRight();
+        int height = getHeight() - getPaddingTop() - getPaddingBottom();
+        float left = getPaddingLeft();
+        float top = getPaddingTop();
+        float levelsHeight = spectrogram != null ? height * LEVELS_PART : height;
+
+        // one bar per carrier, the label in front
+        int n = levelsDB.length;
+        float rowHeight = levelsHeight / n;
+        float barLeft = left + labelWidth + labelPaint.getTextSize() / 2;
+        float barWidth = left + width - barLeft;
+        float textOffset = (rowHeight - labelPaint.ascent() - labelPaint.descent()) / 2;
+        for (int i = 0; i < n; i++) {
+            float rowTop = top + i * rowHeight;
+            canvas.drawText(channelPlan.getLabel(i), left, rowTop + textOffset, labelPaint);
+            float barTop = rowTop + rowHeight * 0.15f;
+            float barBottom = rowTop + rowHeight * 0.85f;
+            canvas.drawRect(barLeft, barTop, barLeft + barWidth, barBottom, backgroundPaint);
+            if (! Float.isNaN(levelsDB[i])) {
+                canvas.drawRect(barLeft, barTop, barLeft + barWidth * fraction(levelsDB[i]), barBottom, barPaint);
+            }
+        }
+        // the comparison level, the threshold the carriers are measured against
+        if (! Float.isNaN(referenceDB)) {
+            float x = barLeft + barWidth * fraction(referenceDB);
+            referencePath.rewind();
+            referencePath.moveTo(x, top);
+            referencePath.lineTo(x, top + levelsHeight);
+            canvas.drawPath(referencePath, referencePaint);
+        }
+
+        // the ring bitmap unrolled: the oldest column at the left, the newest at the right
+        if (spectrogram != null) {
+            int spectrogramTop = (int) (top + levelsHeight + rowHeight / 2);
+            int spectrogramBottom = (int) (top + height);
+            int split = (int) (left + width * (HISTORY - nextColumn) / (float) HISTORY);
+            src.set(nextColumn, 0, HISTORY, spectrogram.getHeight());
+            dst.set((int) left, spectrogramTop, split, spectrogramBottom);
+            canvas.drawBitmap(spectrogram, src, dst, bitmapPaint);
+            if (nextColumn > 0) {
+                src.set(0, 0, nextColumn, spectrogram.getHeight());
+                dst.set(split, spectrogramTop, (int) left + width, spectrogramBottom);
+                canvas.drawBitmap(spectrogram, src, dst, bitmapPaint);
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.phoneear;
+
+import java.nio.ShortBuffer;
+
+/*
+Sources:
+https://en.wikipedia.org/wiki/Goertzel_algorithm
+https://www.embedded.com/the-goertzel-algorithm/
+ */
+
+/**
+ * Cheap wake-up detector for the standby mode.
+ * While no message is received, only the power of the starting signal and of the lowest and
+ * highest comparison frequency is measured with three Goertzel filters, a few multiplications
+ * per sample instead of the full STFT, detector and display update.
+ * The samples are measured in blocks of fftLen; when the starting signal is WAKE_SNR_DB above
+ * the comparison frequencies in WAKE_BLOCKS blocks in a row, the full analysis is woken up.
+ * The starting signal lasts 900 ms, so there is enough of it left for the detector.
+ * With interleaved channels every channel has its own filters and any of them wakes the analysis:
+ * the signal may only reach the microphone at the other end of the phone.
+ */
+class StandbyDetector {
+    static final double WAKE_SNR_DB = 10;
+    static final int WAKE_BLOCKS = 2;
+    private static final double WAKE_RATIO = Math.pow(10, WAKE_SNR_DB / 10);
+    private static final int N_FILTERS = 3;
+
+    private final int blockLen;
+    private final int nChannels;
+    private final double[] coeff;       // 2 cos(2 pi f / sampleRate) of start, low and high reference
+    private final double[][] s1;        // [channel][filter]
+    private final double[][] s2;
+    private int nInBlock;               // frames
+    private int channel;                // of the next sample, interleaved input
+    private final int[] nLoudBlocks;    // per channel
+
+    StandbyDetector(ChannelPlan channelPlan) {
+        this(channelPlan, 1);
+    }
+
+    StandbyDetector(ChannelPlan channelPlan, int nChannels) {
+        blockLen = channelPlan.getFftLen();
+        this.nChannels = nChannels;
+        double[] hz = {
+                channelPlan.getCarrierFrequency(ChannelPlan.START),
+                channelPlan.getReferenceFrequency(0),
+                channelPlan.getReferenceFrequency(channelPlan.getReferences() - 1)};
+        coeff = new double[N_FILTERS];
+        for (int i = 0; i < N_FILTERS; i++) {
+            coeff[i] = 2 * Math.cos(2 * Math.PI * hz[i] / channelPlan.getSampleRate());
+        }
+        s1 = new double[nChannels][N_FILTERS];
+        s2 = new double[nChannels][N_FILTERS];
+        nLoudBlocks = new int[nChannels];
+    }
+
+    // Returns true if the starting signal was heard in these samples, on any channel.
+    // dsLen is a whole number of frames.
+    boolean feedData(short[] ds, int offset, int dsLen) {
+        boolean wake = false;
+        for (int i = offset; i < offset + dsLen; i++) {
+            wake |= add(ds[i]);
+        }
+        return wake;
+    }
+
+    boolean feedData(ShortBuffer ds, int offset, int dsLen) {
+        boolean wake = false;
+        for (int i = offset; i < offset + dsLen; i++) {
+            wake |= add(ds.get(i));
+        }
+        return wake;
+    }
+
+    void reset() {
+        for (int c = 0; c < nChannels; c++) {
+            for (int i = 0; i < N_FILTERS; i++) {
+                s1[c][i] = 0;
+                s2[c][i] = 0;
+            }
+            nLoudBlocks[c] = 0;
+        }
+        nInBlock = 0;
+        channel = 0;
+    }
+
+    private boolean add(double x) {
+        double[] c1 = s1[channel];
+        double[] c2 = s2[channel];
+        for (int i = 0; i < N_FILTERS; i++) {
+            double s0 = x + coeff[i] * c1[i] - c2[i];
+            c2[i] = c1[i];
+            c1[i] = s0;
+        }
+        if (++channel < nChannels) {
+            return false;
+        }
+        channel = 0;
+        if (++nInBlock < blockLen) {
+            return false;
+        }
+
+        // end of the block: power of every filter of every channel
+        nInBlock = 0;
+        boolean wake = false;
+        for (int c = 0; c < nChannels; c++) {
+            double startPower = power(c, 0);
+            double referencePower = 0.5 * (power(c, 1) + power(c, 2));
+            for (int i = 0; i < N_FILTERS; i++) {
+                s1[c][i] = 0;
+                s2[c][i] = 0;
+            }
+            if (startPower > referencePower * WAKE_RATIO) {
+                nLoudBlocks[c]++;
+            } else {
+                nLoudBlocks[c] = 0;
+            }
+            wake |= nLoudBlocks[c] >= WAKE_BLOCKS;
+        }
+        return wake;
+    }
+
+    private double power(int channel, int i) {
+        double a = s1[channel][i];
+        double b = s2[channel][i];
+        return a * a + b * b - coeff[i] * a * b;
+    }
+}
@@ -0,0 +1,330 @@
+package com.example.phoneear;
+
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Detects the transmitted symbols in the spectrum, one measurement every 50 ms.
+ * Symbols are separated by the phase signal (17.0 kHz), a symbol window is reset when the
+ * phase signal is detected or after 10 measurements (500 ms).
+ * Carrier levels are compared with the comparison band from 15.8 kHz to 16.8 kHz, or with
+ * the running noise floor of every carrier if adaptiveNoiseFloor is set (see NoiseFloor).
+ * With trackFrequency the carriers are read where they are received, see FrequencyTracker.
+ *
+ * Hard decision: every measurement votes for its strongest carrier, a carrier with 4 votes (votesNeeded)
+ * is detected as soon as it has them.
+ * Soft decision: the SNR of every carrier is summed over the window between two phase signals,
+ * the symbol is chosen at the end of the window (see decideSoft); uncertain symbols are passed on
+ * as erasures.
+ *
+ * A measurement allocates nothing: levels, votes and sums are arrays of the detector that are
+ * cleared at the end of every window.
+ */
+class SymbolDetector {
+    private static final String TAG = "SymbolDetector";
+
+    private static final int PHASE = ChannelPlan.PHASE;
+    private static final int START = ChannelPlan.START;
+    private static final int FIRST_DATA = ChannelPlan.FIRST_DATA;
+
+    private ChannelPlan channelPlan;       // replaced by the corrected plan of the frequency tracker
+    private final int nCarriers;
+    private final int end;                 // index of the ending signal
+    private final DetectorConfig config;
+    private final boolean multiToneMode;
+    private final MultiToneCode multiToneCode;
+    private final MessageDecoder messageDecoder;
+    private final NoiseFloor noiseFloor;   // null: compare with the comparison band
+    private final FrequencyTracker frequencyTracker;   // null: nominal carrier frequencies
+
+    private int maxCounter;
+    private boolean waitForNextRound = false;
+    // hard decision: level of every carrier in the current measurement
+    private final int[] valuesFrequency;
+    // array that keeps score how often a frequency was the maximum value
+    private final int[] frequencyMaxAmount;
+    // multi-tone mode: score how often a code word was detected
+    private final int[] multiToneAmount;
+
+    // soft decision: SNR in dB of every carrier summed over the current window
+    private final double[] snrSum;
+
+    SymbolDetector(ChannelPlan channelPlan, DetectorConfig config, boolean multiToneMode,
+                   MultiToneCode multiToneCode, MessageDecoder messageDecoder) {
+        this.channelPlan = channelPlan;
+        nCarriers = channelPlan.size();
+        end = channelPlan.getEnd();
+        this.config = config;
+        this.multiToneMode = multiToneMode;
+        this.multiToneCode = multiToneCode;
+        this.messageDecoder = messageDecoder;
+        multiToneAmount = new int[multiToneCode.size()];
+        valuesFrequency = new int[nCarriers];
+        frequencyMaxAmount = new int[nCarriers];
+        snrSum = new double[nCarriers];
+        noiseFloor = config.adaptiveNoiseFloor ? new NoiseFloor(nCarriers) : null;
+        frequencyTracker = config.trackFrequency ? new FrequencyTracker(channelPlan) : null;
+    }
+
+    // Measured sample rate of the recorder, may be called from another thread.
+    void setSampleRateReal(double sampleRateReal) {
+        if (frequencyTracker != null) {
+            frequencyTracker.setSampleRateReal(sampleRateReal);
+        }
+    }
+
+    // Forget the window, the noise floor and the frequency offset, e.g. after standby.
+    void reset() {
+        maxCounter = 0;
+        waitForNextRound = false;
+        Arrays.fill(frequencyMaxAmount, 0);
+        Arrays.fill(multiToneAmount, 0);
+        Arrays.fill(snrSum, 0);
+        if (noiseFloor != null) {
+            noiseFloor.reset();
+        }
+        if (frequencyTracker != null) {
+            frequencyTracker.reset();
+            channelPlan = frequencyTracker.getChannelPlan();
+        }
+    }
+
+    void process(double[] spectrumDB) {
+        if (frequencyTracker != null && frequencyTracker.update(spectrumDB)) {
+            channelPlan = frequencyTracker.getChannelPlan();
+            Log.i(TAG, String.format(Locale.US, "SymbolDetector::process(): carrier offset %.1f Hz, sample rate %.1f Hz",
+                    frequencyTracker.getOffsetHz(), channelPlan.getSampleRateReal()));
+        }
+        if (noiseFloor != null) {
+            noiseFloor.update(channelPlan, spectrumDB);
+        }
+        if (config.softDecision) {
+            processSoft(spectrumDB);
+        } else {
+            processHard(spectrumDB);
+        }
+    }
+
+    private void processHard(double[] spectrumDB) {
+        int threshold;
+        if (noiseFloor != null) {
+            // SNR of every carrier against its own noise floor, the maximum must exceed minSnrDB
+            for (int i = 0; i < nCarriers; i++) {
+                valuesFrequency[i] = (int) noiseFloor.snr(i);
+            }
+            threshold = (int) config.minSnrDB;
+        } else {
+            // average value from 15.8 kHz to 16.8 kHz
+            int averageComparison = (int) channelPlan.referenceLevel(spectrumDB);
+            for (int i = 0; i < nCarriers; i++) {
+                valuesFrequency[i] = (int) channelPlan.carrierLevel(spectrumDB, i);
+            }
+            // the maximum value must be higher than the average of the comparison frequencies * thresholdFactor (0.9)
+            threshold = (int) (averageComparison * config.thresholdFactor);
+        }
+
+        boolean phaseSignal = false;
+
+        // get the index of the maximum value of phase and target frequencies
+        int maxIndexCurrent = indexOfMax(valuesFrequency);
+
+        if (valuesFrequency[maxIndexCurrent] > threshold) {
+            if (multiToneMode && maxIndexCurrent >= FIRST_DATA && maxIndexCurrent < end) {
+                // a digit carrier is the maximum: take the set of the strongest digit carriers as code word
+                int codeWord = multiToneCode.valueOf(
+                        multiToneCode.detect(valuesFrequency, FIRST_DATA, threshold));
+                if (codeWord >= 0) {
+                    multiToneAmount[codeWord]++;
+                }
+            } else {
+                // increase the counter in the amount-of-maxima array
+                frequencyMaxAmount[maxIndexCurrent]++;
+            }
+
+            // if current maximum is phase frequency
+            if (maxIndexCurrent == PHASE) {
+                phaseSignal = true;
+            }
+        }
+        // Against the noise floor the phase tone is a boundary even where the end of the symbol
+        // before it is a little stronger in the same measurement. It must stand out from the other
+        // carriers, a switch between two tones splatters over all of them.
+        if (noiseFloor != null && !phaseSignal && valuesFrequency[PHASE] > threshold) {
+            int others = 0;
+            for (int i = START; i < nCarriers; i++) {
+                if (i != maxIndexCurrent) {
+                    others += valuesFrequency[i];
+                }
+            }
+            phaseSignal = valuesFrequency[PHASE] - others / (nCarriers - 2) > 2 * threshold;
+        }
+
+        maxCounter++;
+
+        // get the phase or target frequency with the most maxima and the amount of its maxima
+        int maxIndexOverall = indexOfMax(frequencyMaxAmount);
+        int maxAmountOverall = frequencyMaxAmount[maxIndexOverall];
+        // same for the code words of the multi-tone mode
+        int maxIndexMultiTone = indexOfMax(multiToneAmount);
+        int maxAmountMultiTone = multiToneAmount[maxIndexMultiTone];
+
+        // if the amount of maxima is equal to a certain threshold and it is not the phaseSignal
+        if (!phaseSignal && !waitForNextRound) {
+            if (maxAmountOverall == config.votesNeeded) {
+                waitForNextRound = true;
+                emitCarrier(maxIndexOverall);
+            } else if (multiToneMode && maxAmountMultiTone == config.votesNeeded) {
+                // one multi-tone symbol carries several digits or bits of a frame
+                waitForNextRound = true;
+                messageDecoder.codeWord(maxIndexMultiTone);
+            }
+        }
+
+        if (maxCounter == 10 || phaseSignal) { // reset maxCounter after 10 x 50 ms or when phase signal is detected
+            // maxCounter >= 3, because signal needs to have a certain length and is not supposed to be a phase signal (max. length 2)
+            if (maxCounter >= 3 && maxAmountOverall < config.votesNeeded && maxIndexOverall != START
+                    && maxAmountMultiTone < config.votesNeeded) {
+                messageDecoder.missing();
+            }
+            maxCounter = 0;
+            waitForNextRound = false;
+            Arrays.fill(frequencyMaxAmount, 0);
+            Arrays.fill(multiToneAmount, 0);
+        }
+    }
+
+    private void processSoft(double[] spectrumDB) {
+        double noiseDB = channelPlan.referenceLevel(spectrumDB);
+
+        // The phase signal ends the window, it does not belong to any symbol. It lasts about one
+        // measurement, which then often also holds the end or the start of a symbol: the phase tone
+        // is a boundary as soon as it is well above the noise, even if a symbol carrier is stronger,
+        // else the windows slip against the symbols and merge two of them. Near the noise it must
+        // be the strongest carrier.
+        double phaseSnr = snr(spectrumDB, PHASE, noiseDB);
+        boolean phaseStrongest = phaseSnr > config.softMinSnrDB / 2;
+        for (int i = START; i < nCarriers && phaseStrongest; i++) {
+            phaseStrongest = snr(spectrumDB, i, noiseDB) < phaseSnr;
+        }
+        boolean phaseSignal = phaseSnr > config.softMinSnrDB || phaseStrongest;
+
+        if (! phaseSignal) {
+            for (int i = 0; i < nCarriers; i++) {
+                snrSum[i] += Math.max(snr(spectrumDB, i, noiseDB), 0);
+            }
+            maxCounter++;
+        }
+
+        if (maxCounter == 10 || phaseSignal) {
+            // maxCounter >= 3, a shorter window is the rest of a phase signal
+            if (maxCounter >= 3) {
+                decideSoft(maxCounter);
+            }
+            maxCounter = 0;
+            Arrays.fill(snrSum, 0);
+        }
+    }
+
+    // SNR in dB of the carrier against its noise floor, or against noiseDB of the comparison band
+    private double snr(double[] spectrumDB, int carrier, double noiseDB) {
+        if (noiseFloor != null) {
+            return noiseFloor.snr(carrier);
+        }
+        return channelPlan.carrierLevel(spectrumDB, carrier) - noiseDB;
+    }
+
+    // Maximum likelihood decision over the window of nMeasurements measurements, among the allowed
+    // symbols only (the code words used in binary framing). The margin to the second best symbol is the
+    // confidence, a symbol below the threshold is an erasure: the FEC repairs it at half the cost of an error.
+    private void decideSoft(int nMeasurements) {
+        int best = START;
+        for (int i = START + 1; i < nCarriers; i++) {
+            if (snrSum[i] > snrSum[best]) {
+                best = i;
+            }
+        }
+        if ((best == START || best == end) && snrSum[best] / nMeasurements > config.softMinSnrDB) {
+            emitCarrier(best);
+            return;
+        }
+        if (! messageDecoder.isStarted()) {
+            return;
+        }
+
+        double bestScore = Double.NEGATIVE_INFINITY;
+        double secondScore = Double.NEGATIVE_INFINITY;
+        int bestSymbol = -1;
+        int nActive;
+        if (multiToneMode) {
+            nActive = multiToneCode.getWeight();
+            for (int v = 0; v < multiToneCode.size(); v++) {
+                if (! messageDecoder.isCodeWordUsed(v)) {
+                    continue;
+                }
+                int mask = multiToneCode.maskOf(v);
+                double score = 0;
+                for (int i = 0; i < channelPlan.getDataCarriers(); i++) {
+                    if ((mask & (1 << i)) != 0) {
+                        score += snrSum[FIRST_DATA + i];
+                    }
+                }
+                if (score > bestScore) {
+                    secondScore = bestScore;
+                    bestScore = score;
+                    bestSymbol = v;
+                } else if (score > secondScore) {
+                    secondScore = score;
+                }
+            }
+        } else {
+            nActive = 1;
+            for (int i = FIRST_DATA; i < Math.min(FIRST_DATA + 10, end); i++) {
+                if (snrSum[i] > bestScore) {
+                    secondScore = bestScore;
+                    bestScore = snrSum[i];
+                    bestSymbol = i;
+                } else if (snrSum[i] > secondScore) {
+                    secondScore = snrSum[i];
+                }
+            }
+        }
+
+        double snrDB = bestScore / (nActive * nMeasurements);
+        double confidenceDB = (bestScore - secondScore) / nMeasurements;
+        if (snrDB <= config.softMinSnrDB || confidenceDB < config.softMinConfidenceDB) {
+            Log.i(TAG, "SymbolDetector::decideSoft(): erasure, SNR " + Math.round(snrDB)
+                    + " dB, confidence " + Math.round(confidenceDB) + " dB");
+            messageDecoder.missing();
+        } else if (multiToneMode) {
+            messageDecoder.codeWord(bestSymbol);
+        } else {
+            emitCarrier(bestSymbol);
+        }
+    }
+
+    // pass a single tone on to the message decoder
+    private void emitCarrier(int index) {
+        if (index == START) {                    // 17.8 kHz: starting signal
+            messageDecoder.start();
+        } else if (index == end) {               // 20.0 kHz: ending signal
+            messageDecoder.end();
+        } else if (index >= FIRST_DATA && index < FIRST_DATA + 10) {  // 18.0 kHz to 19.8 kHz: digits 0 to 9
+            messageDecoder.digit(index - FIRST_DATA);
+        } else if (index > FIRST_DATA) {         // data carriers beyond the digits are only used for multi-tone
+            messageDecoder.missing();
+        }
+    }
+
+    // index of the first maximum of the values
+    private static int indexOfMax(int[] values) {
+        int index = 0;
+        for (int i = 1; i < values.length; i++) {
+            if (values[index] < values[i]) {
+                index = i;
+            }
+        }
+        return index;
+    }
+}
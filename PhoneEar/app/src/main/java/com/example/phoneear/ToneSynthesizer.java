@@ -0,0 +1,338 @@
+package com.example.phoneear;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/*
+Sources:
+https://en.wikipedia.org/wiki/Numerically-controlled_oscillator
+https://en.wikipedia.org/wiki/Continuous-phase_frequency-shift_keying
+http://soundfile.sapp.org/doc/WaveFormat/
+ */
+
+/**
+ * Generates the tones of the protocol for a message, the transmit side of MessageDecoder:
+ * 100 ms phase tone before every signal, 900 ms starting signal, two digits of 400 ms per
+ * letter (its ASCII code, "72" for 'H'), 900 ms ending signal. Durations and amplitude can be set.
+ * In multi-tone mode (see MultiToneCode) a symbol is a code word: all its carriers at the same time,
+ * each at the amplitude divided by their number.
+ *
+ * One sine wavetable is read by a 32 bit phase accumulator with a phase increment per carrier
+ * (numerically controlled oscillator), so the phase runs on at every change of frequency and
+ * there are no clicks to splatter into the neighbouring carriers. Integer arithmetic only,
+ * read() generates hours of audio per second.
+ *
+ * read() fills short buffers like AudioRecord.read() and can be passed on to AudioTrack.write()
+ * as it is; writeTo()/writeWav() write 16 bit little endian PCM, e.g. for FileAudioSource.
+ */
+class ToneSynthesizer {
+    private static final int TABLE_BITS = 12;
+    private static final int TABLE_SIZE = 1 << TABLE_BITS;
+    private static final int FRACTION_BITS = 32 - TABLE_BITS;
+    private static final int SILENCE = -1;
+    private static final int MULTI_TONE = -2;
+
+    private final ChannelPlan channelPlan;
+    private final int sampleRate;
+    private final short[] table = new short[TABLE_SIZE + 1];   // one period, the last entry repeats the first
+    private final int[] increments;                            // phase increment of every carrier
+    private final int[] dataPhases;                            // of the data carriers of a multi-tone symbol
+
+    private double phaseSeconds = 0.1;
+    private double symbolSeconds = 0.4;
+    private double signalSeconds = 0.9;   // starting and ending signal
+
+    // queued tones: carrier (or SILENCE, MULTI_TONE), mask of the data carriers of MULTI_TONE and length in samples
+    private int[] toneCarrier = new int[64];
+    private int[] toneMask = new int[64];
+    private int[] toneLength = new int[64];
+    private int nTones;
+    private int tone;              // the tone being generated
+    private int toneRemaining;     // samples of it still to generate
+    private int phase;             // unsigned, a full turn is 2^32
+
+    // amplitude: peak value as a fraction of full scale, 0 to 1
+    ToneSynthesizer(ChannelPlan channelPlan, double amplitude) {
+        if (amplitude < 0 || amplitude > 1) {
+            throw new IllegalArgumentException("ToneSynthesizer(): amplitude " + amplitude + " is not between 0 and 1.");
+        }
+        this.channelPlan = channelPlan;
+        sampleRate = channelPlan.getSampleRate();
+        for (int i = 0; i <= TABLE_SIZE; i++) {
+            table[i] = (short) Math.round(32767 * amplitude * Math.sin(2 * Math.PI * i / TABLE_SIZE));
+        }
+        increments = new int[channelPlan.size()];
+        for (int i = 0; i < increments.length; i++) {
+            increments[i] = increment(channelPlan.getCarrierFrequency(i));
+        }
+        dataPhases = new int[channelPlan.getDataCarriers()];
+    }
+
+    // phase increment per sample of a tone, frequency / sampleRate of a turn
+    private int increment(double hz) {
+        if (hz <= 0 || hz >= sampleRate / 2.0) {
+            throw new IllegalArgumentException("ToneSynthesizer: " + hz + " Hz is outside the band at " + sampleRate + " Hz.");
+        }
+        return (int) Math.round(hz / sampleRate * 4294967296.0);
+    }
+
+    // Durations in seconds of the phase tone, of a digit and of the starting and ending signal.
+    void setDurations(double phaseSeconds, double symbolSeconds, double signalSeconds) {
+        if (phaseSeconds <= 0 || symbolSeconds <= 0 || signalSeconds <= 0) {
+            throw new IllegalArgumentException("ToneSynthesizer.setDurations(): durations must be positive.");
+        }
+        this.phaseSeconds = phaseSeconds;
+        this.symbolSeconds = symbolSeconds;
+        this.signalSeconds = signalSeconds;
+    }
+
+    int getSampleRate() {
+        return sampleRate;
+    }
+
+    // Queues a message of the letters A to Z.
+    void send(String message) {
+        sendDigits(digitsOf(message));
+    }
+
+    // Queues a message of the letters A to Z in multi-tone mode, two digits per code word with 3 of 10 carriers.
+    void sendMultiTone(String message, MultiToneCode code) {
+        sendCodeWords(digitsOf(message), code);
+    }
+
+    // the ASCII codes of the letters
+    private static String digitsOf(String message) {
+        StringBuilder digits = new StringBuilder(2 * message.length());
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                throw new IllegalArgumentException("ToneSynthesizer.send(): '" + c + "' can not be sent, only A to Z.");
+            }
+            digits.append((int) c);
+        }
+        return digits.toString();
+    }
+
+    // Queues a message of decimal digits, framed by the starting and ending signal.
+    void sendDigits(String digits) {
+        sendTone(ChannelPlan.START, signalSeconds);
+        for (int i = 0; i < digits.length(); i++) {
+            int digit = digits.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || digit >= channelPlan.getDataCarriers()) {
+                throw new IllegalArgumentException("ToneSynthesizer.sendDigits(): '" + digits.charAt(i) + "' is no digit.");
+            }
+            sendTone(ChannelPlan.FIRST_DATA + digit, symbolSeconds);
+        }
+        sendTone(channelPlan.getEnd(), signalSeconds);
+    }
+
+    // Queues a message of decimal digits in multi-tone mode, code.getDigitsPerSymbol() digits per
+    // code word, framed by the starting and ending signal.
+    void sendCodeWords(String digits, MultiToneCode code) {
+        int perSymbol = code.getDigitsPerSymbol();
+        if (digits.length() % perSymbol != 0) {
+            throw new IllegalArgumentException("ToneSynthesizer.sendCodeWords(): " + digits.length()
+                    + " digits are no code words of " + perSymbol + " digits.");
+        }
+        sendTone(ChannelPlan.START, signalSeconds);
+        for (int i = 0; i < digits.length(); i += perSymbol) {
+            int value = 0;
+            for (int j = i; j < i + perSymbol; j++) {
+                int digit = digits.charAt(j) - '0';
+                if (digit < 0 || digit > 9) {
+                    throw new IllegalArgumentException("ToneSynthesizer.sendCodeWords(): '" + digits.charAt(j) + "' is no digit.");
+                }
+                value = 10 * value + digit;
+            }
+            sendCodeWord(code.maskOf(value), symbolSeconds);
+        }
+        sendTone(channelPlan.getEnd(), signalSeconds);
+    }
+
+    // Queues a binary frame of the payload (see FrameCodec) with nParity Reed-Solomon parity symbols
+    // per block, one code word per symbol, framed by the starting and ending signal.
+    void sendFrame(byte[] payload, MultiToneCode code, int nParity) {
+        FrameCodec codec = new FrameCodec(code);
+        int[] symbols = FrameCodec.encode(payload, 0, payload.length, codec.getBitsPerSymbol(), nParity);
+        sendTone(ChannelPlan.START, signalSeconds);
+        for (int symbol : symbols) {
+            sendCodeWord(code.maskOf(codec.codeWordOf(symbol)), symbolSeconds);
+        }
+        sendTone(channelPlan.getEnd(), signalSeconds);
+    }
+
+    // Queues the data carriers of the mask (bit i: data carrier i) at the same time, after the phase tone.
+    void sendCodeWord(int mask, double seconds) {
+        if (mask <= 0 || mask >= 1 << dataPhases.length) {
+            throw new IllegalArgumentException("ToneSynthesizer.sendCodeWord(): no carriers for mask " + mask + ".");
+        }
+        queue(ChannelPlan.PHASE, 0, phaseSeconds);
+        queue(MULTI_TONE, mask, seconds);
+    }
+
+    // Queues one carrier, after the phase tone.
+    void sendTone(int carrier, double seconds) {
+        if (carrier < 0 || carrier >= increments.length) {
+            throw new IllegalArgumentException("ToneSynthesizer.sendTone(): no carrier " + carrier + ".");
+        }
+        queue(ChannelPlan.PHASE, 0, phaseSeconds);
+        queue(carrier, 0, seconds);
+    }
+
+    // Queues a pause.
+    void sendSilence(double seconds) {
+        queue(SILENCE, 0, seconds);
+    }
+
+    private void queue(int carrier, int mask, double seconds) {
+        if (nTones == toneCarrier.length) {
+            toneCarrier = Arrays.copyOf(toneCarrier, 2 * nTones);
+            toneMask = Arrays.copyOf(toneMask, 2 * nTones);
+            toneLength = Arrays.copyOf(toneLength, 2 * nTones);
+        }
+        toneCarrier[nTones] = carrier;
+        toneMask[nTones] = mask;
+        toneLength[nTones] = (int) Math.round(seconds * sampleRate);
+        if (nTones == tone) {
+            toneRemaining = toneLength[nTones];
+        }
+        nTones++;
+    }
+
+    // samples still to be generated
+    long remaining() {
+        long n = toneRemaining;
+        for (int i = tone + 1; i < nTones; i++) {
+            n += toneLength[i];
+        }
+        return n;
+    }
+
+    boolean isFinished() {
+        return remaining() == 0;
+    }
+
+    // Forgets the queued tones.
+    void reset() {
+        nTones = 0;
+        tone = 0;
+        toneRemaining = 0;
+        phase = 0;
+    }
+
+    // Generates up to len samples into buffer, returns the number generated, 0 when all tones are done.
+    int read(short[] buffer, int offset, int len) {
+        int n = 0;
+        while (n < len && tone < nTones) {
+            if (toneRemaining == 0) {
+                if (++tone == nTones) {
+                    break;
+                }
+                toneRemaining = toneLength[tone];
+                continue;
+            }
+            int m = Math.min(len - n, toneRemaining);
+            int carrier = toneCarrier[tone];
+            if (carrier == SILENCE) {
+                Arrays.fill(buffer, offset + n, offset + n + m, (short) 0);
+            } else if (carrier == MULTI_TONE) {
+                if (toneRemaining == toneLength[tone]) {
+                    Arrays.fill(dataPhases, phase);    // all carriers start where the tone before ended
+                }
+                oscillateCodeWord(buffer, offset + n, m, toneMask[tone]);
+            } else {
+                oscillate(buffer, offset + n, m, increments[carrier]);
+            }
+            n += m;
+            toneRemaining -= m;
+        }
+        return n;
+    }
+
+    // table lookup with linear interpolation between the entries
+    private void oscillate(short[] buffer, int offset, int len, int increment) {
+        int p = phase;
+        for (int i = offset; i < offset + len; i++) {
+            int index = p >>> FRACTION_BITS;
+            int fraction = (p >>> (FRACTION_BITS - 15)) & 0x7fff;
+            int a = table[index];
+            buffer[i] = (short) (a + (((table[index + 1] - a) * fraction) >> 15));
+            p += increment;
+        }
+        phase = p;
+    }
+
+    // the sum of the data carriers of the mask
+    private void oscillateCodeWord(short[] buffer, int offset, int len, int mask) {
+        int nActive = Integer.bitCount(mask);
+        for (int i = offset; i < offset + len; i++) {
+            int sum = 0;
+            for (int c = 0; c < dataPhases.length; c++) {
+                if ((mask & (1 << c)) != 0) {
+                    int p = dataPhases[c];
+                    int index = p >>> FRACTION_BITS;
+                    int fraction = (p >>> (FRACTION_BITS - 15)) & 0x7fff;
+                    int a = table[index];
+                    sum += a + (((table[index + 1] - a) * fraction) >> 15);
+                    dataPhases[c] = p + increments[ChannelPlan.FIRST_DATA + c];
+                }
+            }
+            buffer[i] = (short) (sum / nActive);
+        }
+        phase = dataPhases[Integer.numberOfTrailingZeros(mask)];
+    }
+
+    // Writes the remaining tones as 16 bit little endian PCM.
+    void writeTo(OutputStream out) throws IOException {
+        short[] chunk = new short[4096];
+        byte[] bytes = new byte[2 * chunk.length];
+        int n;
+        while ((n = read(chunk, 0, chunk.length)) > 0) {
+            for (int i = 0; i < n; i++) {
+                bytes[2 * i] = (byte) chunk[i];
+                bytes[2 * i + 1] = (byte) (chunk[i] >> 8);
+            }
+            out.write(bytes, 0, 2 * n);
+        }
+    }
+
+    // Writes the remaining tones as mono WAV file.
+    void writeWav(OutputStream out) throws IOException {
+        long dataBytes = 2 * remaining();
+        if (dataBytes > 0xffffffffL - 36) {
+            throw new IOException("ToneSynthesizer.writeWav(): too long for a WAV file.");
+        }
+        byte[] header = new byte[44];
+        putAscii(header, 0, "RIFF");
+        putInt(header, 4, (int) (36 + dataBytes));
+        putAscii(header, 8, "WAVEfmt ");
+        putInt(header, 16, 16);              // size of the fmt chunk
+        putShort(header, 20, 1);             // PCM
+        putShort(header, 22, 1);             // mono
+        putInt(header, 24, sampleRate);
+        putInt(header, 28, 2 * sampleRate);  // bytes per second
+        putShort(header, 32, 2);             // bytes per frame
+        putShort(header, 34, 16);            // bits per sample
+        putAscii(header, 36, "data");
+        putInt(header, 40, (int) dataBytes);
+        out.write(header);
+        writeTo(out);
+    }
+
+    private static void putAscii(byte[] b, int pos, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            b[pos + i] = (byte) s.charAt(i);
+        }
+    }
+
+    private static void putShort(byte[] b, int pos, int v) {
+        b[pos] = (byte) v;
+        b[pos + 1] = (byte) (v >> 8);
+    }
+
+    private static void putInt(byte[] b, int pos, int v) {
+        putShort(b, pos, v);
+        putShort(b, pos + 2, v >> 16);
+    }
+}
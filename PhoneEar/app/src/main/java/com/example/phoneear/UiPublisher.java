@@ -0,0 +1,165 @@
+package com.example.phoneear;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+/*
+Sources:
+https://developer.android.com/reference/android/view/Choreographer
+https://developer.android.com/reference/android/view/Choreographer.FrameCallback
+https://developer.android.com/topic/performance/vitals/render
+ */
+
+/**
+ * Coalescing channel from the sampling thread to the UI. The sampling thread only stores the newest
+ * spectrum, the text to append and the state, and marks them dirty; once per display frame the UI
+ * thread takes what changed and shows it on the Display. Spectra that come faster than the frames
+ * are dropped, appended text is collected until the next frame. The main thread gets at most one
+ * message and one frame callback per frame, instead of a Runnable for every spectrum and every symbol.
+ *
+ * The publish methods may be called from any thread, they do not allocate once the buffers have
+ * their size. Create the publisher on the UI thread and stop() it there when the views go away.
+ */
+class UiPublisher implements Choreographer.FrameCallback {
+
+    interface Display {
+        // spectrumDB null: not recording, show the carriers without levels
+        void showSpectrum(ChannelPlan channelPlan, double[] spectrumDB);
+        void clearText();
+        void appendText(CharSequence text);
+        void showState(String state);
+    }
+
+    private final Display display;
+    private final Handler handler;
+    private final Choreographer choreographer;
+    // posted at most once per frame, asks the Choreographer of the UI thread for the next frame
+    private final Runnable scheduleFrame = new Runnable() {
+        @Override
+        public void run() {
+            choreographer.postFrameCallback(UiPublisher.this);
+        }
+    };
+
+    // written by the publishers, guarded by this
+    private boolean scheduled;
+    private boolean stopped;
+    private boolean spectrumDirty;
+    private ChannelPlan channelPlan;
+    private double[] spectrumDB;       // null: no spectrum
+    private boolean textCleared;
+    private final StringBuilder text = new StringBuilder(256);
+    private String state;
+
+    // the UI thread's copies
+    private double[] shownSpectrumDB;
+    private final StringBuilder shownText = new StringBuilder(256);
+    private String shownState;
+
+    UiPublisher(Display display) {
+        this.display = display;
+        handler = new Handler(Looper.getMainLooper());
+        choreographer = Choreographer.getInstance();
+    }
+
+    // A new spectrum, replaces the one not shown yet; spectrumDB null clears the levels.
+    void publishSpectrum(ChannelPlan channelPlan, double[] spectrumDB) {
+        synchronized (this) {
+            this.channelPlan = channelPlan;
+            if (spectrumDB == null) {
+                this.spectrumDB = null;
+            } else {
+                if (this.spectrumDB == null || this.spectrumDB.length != spectrumDB.length) {
+                    this.spectrumDB = new double[spectrumDB.length];
+                }
+                System.arraycopy(spectrumDB, 0, this.spectrumDB, 0, spectrumDB.length);
+            }
+            spectrumDirty = true;
+            requestFrame();
+        }
+    }
+
+    void clearText() {
+        synchronized (this) {
+            textCleared = true;
+            text.setLength(0);
+            requestFrame();
+        }
+    }
+
+    void appendText(CharSequence s) {
+        synchronized (this) {
+            text.append(s);
+            requestFrame();
+        }
+    }
+
+    // The state line; shown only if it is another string than the one shown.
+    void publishState(String state) {
+        synchronized (this) {
+            this.state = state;
+            requestFrame();
+        }
+    }
+
+    // No more frames, e.g. when the activity is destroyed.
+    void stop() {
+        synchronized (this) {
+            stopped = true;
+        }
+        handler.removeCallbacks(scheduleFrame);
+        choreographer.removeFrameCallback(this);
+    }
+
+    // guarded by this
+    private void requestFrame() {
+        if (! scheduled && ! stopped) {
+            scheduled = true;
+            handler.post(scheduleFrame);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        boolean newSpectrum;
+        boolean hasSpectrum = false;
+        ChannelPlan plan;
+        boolean clear;
+        String newState;
+        synchronized (this) {
+            scheduled = false;
+            newSpectrum = spectrumDirty;
+            spectrumDirty = false;
+            plan = channelPlan;
+            if (newSpectrum && spectrumDB != null) {
+                hasSpectrum = true;
+                if (shownSpectrumDB == null || shownSpectrumDB.length != spectrumDB.length) {
+                    shownSpectrumDB = new double[spectrumDB.length];
+                }
+                System.arraycopy(spectrumDB, 0, shownSpectrumDB, 0, spectrumDB.length);
+            }
+            clear = textCleared;
+            textCleared = false;
+            shownText.setLength(0);
+            shownText.append(text);
+            text.setLength(0);
+            newState = state;
+        }
+
+        // the views are updated outside of the lock, the publishers do not wait for the UI
+        if (newSpectrum) {
+            display.showSpectrum(plan, hasSpectrum ? shownSpectrumDB : null);
+        }
+        if (clear) {
+            display.clearText();
+        }
+        if (shownText.length() > 0) {
+            display.appendText(shownText);
+        }
+        if (newState != null && ! newState.equals(shownState)) {
+            shownState = newState;
+            display.showState(newState);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.phoneear;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class BatchDecoderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void writeRecording(File file, String message) throws IOException {
+        ToneSynthesizer synthesizer = new ToneSynthesizer(new ChannelPlan(ChannelPlan.DEFAULT_CARRIERS_HZ,
+                ChannelPlan.DEFAULT_REFERENCES_HZ, 44100, 512), 0.1);
+        synthesizer.sendSilence(1);
+        synthesizer.send(message);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            synthesizer.writeWav(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    // a valid header apart from 0 channels, FileAudioSource fails with an ArithmeticException
+    private static void writeZeroChannelWav(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            out.writeBytes("RIFF");
+            out.writeInt(Integer.reverseBytes(36 + 4));
+            out.writeBytes("WAVEfmt ");
+            out.writeInt(Integer.reverseBytes(16));
+            out.writeShort(Short.reverseBytes((short) 1));
+            out.writeShort(0);
+            out.writeInt(Integer.reverseBytes(44100));
+            out.writeInt(0);
+            out.writeShort(0);
+            out.writeShort(Short.reverseBytes((short) 16));
+            out.writeBytes("data");
+            out.writeInt(Integer.reverseBytes(4));
+            out.writeInt(0);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void directoryTree_isDecodedPerRecording() throws IOException {
+        File dir = folder.newFolder("recordings");
+        File room = new File(dir, "room2");
+        assertTrue(room.mkdir());
+        writeRecording(new File(dir, "a.wav"), "HI");
+        writeRecording(new File(room, "a.wav"), "OK");
+        assertTrue(new File(dir, "notes.txt").createNewFile());
+        writeZeroChannelWav(new File(dir, "broken.wav"));
+        File outDir = folder.newFolder("results");
+
+        BatchDecoder batchDecoder = new BatchDecoder(new AnalyzerParameters(), 2);
+        assertEquals(2, batchDecoder.decodeDirectory(dir, outDir));
+        batchDecoder.shutdown();
+
+        String a = new String(Files.readAllBytes(new File(outDir, "a.wav" + BatchDecoder.RESULT_SUFFIX).toPath()),
+                StandardCharsets.UTF_8);
+        String b = new String(Files.readAllBytes(new File(outDir, "room2_a.wav" + BatchDecoder.RESULT_SUFFIX).toPath()),
+                StandardCharsets.UTF_8);
+        assertTrue(a, a.startsWith("# a.wav 44100 Hz 1 ch"));
+        assertTrue(a, a.contains("\tvalid\tHI\n"));
+        assertTrue(b, b.contains("\tvalid\tOK\n"));
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.phoneear;
+
+import java.io.File;
+
+/**
+ * Command line tool for BatchDecoder, off the device with the classpath of the unit tests:
+ * recording directory [result directory [threads]].
+ */
+public class BatchDecoderTool {
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("usage: BatchDecoderTool recording-directory [result-directory [threads]]");
+            System.exit(2);
+        }
+        File outDir = args.length > 1 ? new File(args[1]) : null;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        BatchDecoder batchDecoder = new BatchDecoder(new AnalyzerParameters(), threads);
+        System.out.println(batchDecoder.decodeDirectory(new File(args[0]), outDir) + " recordings decoded.");
+        batchDecoder.shutdown();
+    }
+}
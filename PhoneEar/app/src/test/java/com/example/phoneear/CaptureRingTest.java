@@ -0,0 +1,62 @@
+package com.example.phoneear;
+
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+import static org.junit.Assert.*;
+
+public class CaptureRingTest {
+
+    @Test
+    public void samplesWrapAroundInOrder() {
+        CaptureRing ring = new CaptureRing(6);
+        assertEquals(8, ring.capacity());
+        short next = 0;
+        short expected = 0;
+        for (int round = 0; round < 10; round++) {
+            // write 5, read 5: the regions wrap at the end of the array
+            for (int written = 0; written < 5; ) {
+                int n = Math.min(ring.writable(), 5 - written);
+                for (int i = 0; i < n; i++) {
+                    ring.array()[ring.writeOffset() + i] = next++;
+                }
+                ring.commit(n);
+                written += n;
+            }
+            for (int read = 0; read < 5; ) {
+                int n = ring.readable();
+                for (int i = 0; i < n; i++) {
+                    assertEquals(expected++, ring.array()[ring.readOffset() + i]);
+                }
+                ring.release(n);
+                read += n;
+            }
+        }
+    }
+
+    @Test
+    public void fullRingHasNoSpace() {
+        CaptureRing ring = new CaptureRing(4);
+        ring.commit(ring.writable());
+        assertEquals(0, ring.writable());
+        ring.release(1);
+        assertEquals(1, ring.writable());
+    }
+
+    @Test
+    public void directRing_writeBufferStartsAtWriteOffset() {
+        CaptureRing ring = new CaptureRing(1024, true);
+        ring.commit(300);
+        ring.release(300);
+        // what the recorder would do: write native order samples at the start of the slice
+        ShortBuffer out = ring.writeBuffer().order(ByteOrder.nativeOrder()).asShortBuffer();
+        out.put(0, (short) 1234);
+        out.put(1, (short) -5);
+        ring.commit(2);
+        assertEquals(2, ring.readable());
+        assertEquals(1234, ring.samples().get(ring.readOffset()));
+        assertEquals(-5, ring.samples().get(ring.readOffset() + 1));
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.phoneear;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ChannelPlanTest {
+
+    @Test
+    public void defaultPlan_interpolatesBetweenBins() {
+        ChannelPlan plan = new ChannelPlan(ChannelPlan.DEFAULT_CARRIERS_HZ, ChannelPlan.DEFAULT_REFERENCES_HZ, 44100, 512);
+        // 17.0 kHz is bin 197.37 at 44.1 kHz
+        assertEquals(197, plan.getCarrierBin(ChannelPlan.PHASE));
+        double[] spectrumDB = new double[257];
+        spectrumDB[197] = -40;
+        spectrumDB[198] = -80;
+        double w = 17000.0 * 512 / 44100 - 197;
+        assertEquals(-40 * (1 - w) - 80 * w, plan.carrierLevel(spectrumDB, ChannelPlan.PHASE), 1e-9);
+        assertEquals(10, plan.getDataCarriers());
+    }
+
+    @Test
+    public void extendedPlan_hasMoreWiderSpacedCarriers() {
+        ChannelPlan plan48 = ChannelPlan.extended(48000, 512);
+        assertEquals(ChannelPlan.MAX_DATA_CARRIERS, plan48.getDataCarriers());
+        assertEquals(22400, plan48.getCarrierFrequency(plan48.getEnd()), 1e-9);
+        assertTrue(plan48.getMinSpacingBins() >= 3);
+
+        ChannelPlan plan96 = ChannelPlan.extended(96000, 512);
+        assertEquals(27800, plan96.getCarrierFrequency(plan96.getEnd()), 1e-9);
+        assertTrue(plan96.getMinSpacingBins() >= 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void carrierAboveNyquist_isRejected() {
+        new ChannelPlan(ChannelPlan.DEFAULT_CARRIERS_HZ, ChannelPlan.DEFAULT_REFERENCES_HZ, 32000, 512);
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.phoneear;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CpuGovernorTest {
+    private static final int SAMPLE_RATE = 44100;
+    private static final int CHUNK = 1024;
+    private static final long CHUNK_NANOS = CHUNK * 1000000000L / SAMPLE_RATE;
+
+    // feed one second of chunks that each take load * their duration to process
+    private static boolean second(CpuGovernor governor, double load) {
+        boolean changed = false;
+        for (int n = 0; n < SAMPLE_RATE; n += CHUNK) {
+            changed |= governor.update((long) (load * CHUNK_NANOS), CHUNK, false);
+        }
+        return changed;
+    }
+
+    @Test
+    public void stepsUpWhenCalmAndKeepsSpectrumPeriod() {
+        CpuGovernor governor = new CpuGovernor(512, 1024, 2, SAMPLE_RATE, 0.3);
+        assertEquals(0, governor.getLevel());
+        for (int i = 0; i < CpuGovernor.CALM_WINDOWS; i++) {
+            second(governor, 0.01);
+        }
+        assertEquals(1, governor.getLevel());
+        assertEquals(512, governor.getHopLen());
+        assertEquals(4, governor.getFFTAverage());
+    }
+
+    @Test
+    public void stepsDownOverBudget() {
+        CpuGovernor governor = new CpuGovernor(512, 256, 8, SAMPLE_RATE, 0.3);
+        assertEquals(2, governor.getLevel());
+        assertTrue(second(governor, 0.5));
+        assertEquals(1, governor.getLevel());
+    }
+
+    @Test
+    public void hopLenOfNoLevel_pipelineStartsAtTheGovernorsLevel() {
+        AnalyzerParameters analyzerParam = new AnalyzerParameters();
+        analyzerParam.sampleRate = SAMPLE_RATE;
+        analyzerParam.fftLen = 512;
+        analyzerParam.hopLen = 768;
+        analyzerParam.nFFTAverage = 2;
+        analyzerParam.cpuBudget = 1;
+        CpuGovernor governor = new CpuGovernor(512, 768, 2, SAMPLE_RATE, 1);
+        assertEquals(0, governor.getLevel());
+        assertEquals(1024, governor.getHopLen());
+        assertEquals(1, governor.getFFTAverage());
+
+        final int[] nSpectra = new int[1];
+        AnalysisPipeline pipeline = new AnalysisPipeline(analyzerParam, 1, new MessageDecoder.Output() {
+            @Override
+            public void append(String text) {
+            }
+
+            @Override
+            public void messageDecoded(String message, boolean valid) {
+            }
+        }, new AnalysisPipeline.Listener() {
+            @Override
+            public void spectrumReady(double[] spectrumDB) {
+                nSpectra[0]++;
+            }
+
+            @Override
+            public void standbyChanged(boolean standby) {
+            }
+        });
+        // one second, less than CALM_WINDOWS: the level stays
+        pipeline.start();
+        short[] chunk = new short[CHUNK];
+        for (int n = 0; n < SAMPLE_RATE; n += CHUNK) {
+            pipeline.process(chunk, 0, CHUNK, false);
+        }
+        pipeline.finish();
+        // a spectrum every 1024 samples, not every 768 * 2
+        assertEquals(SAMPLE_RATE / 1024, nSpectra[0], 1);
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.phoneear;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * End-to-end benchmark of the receiver: synthesized transmissions (ToneSynthesizer) with white
+ * noise, a carrier frequency offset and dropouts go through the AnalysisPipeline, i.e. ShortTimeFT,
+ * SymbolDetector and MessageDecoder exactly as on the phone, as fast as the CPU allows.
+ *
+ * Reported per SNR (tone power against noise power over the whole band):
+ *   real-time factor  seconds of audio analysed per second of CPU
+ *   symbols/s         protocol symbols (signals and digits) analysed per second of CPU
+ *   CER               character error rate, edit distance of the decoded to the sent letters
+ *   alloc/s           bytes allocated per second of audio by the analysis thread
+ *
+ * CPU time is the one of the analysing thread (the pipeline runs on it alone, no STFT or decoder
+ * workers), wall-clock time if the JVM can not tell.
+ *
+ * Run main() for the full sweep; the unit test only checks one clean point.
+ */
+public class DecodeBenchmark {
+    private static final int SAMPLE_RATE = 44100;
+    private static final int CHUNK = 2048;           // readChunkSize of SamplingLoop
+    private static final double AMPLITUDE = 0.25;
+    private static final String LETTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    static class Scenario {
+        final String name;
+        final double offsetHz;           // added to every carrier by the transmitter
+        final double dropoutsPerSecond;  // 20 ms of silence each, at random
+        final int nMessages;
+        final int messageLength;
+
+        Scenario(String name, double offsetHz, double dropoutsPerSecond, int nMessages, int messageLength) {
+            this.name = name;
+            this.offsetHz = offsetHz;
+            this.dropoutsPerSecond = dropoutsPerSecond;
+            this.nMessages = nMessages;
+            this.messageLength = messageLength;
+        }
+    }
+
+    static class Result {
+        double audioSeconds;
+        double cpuSeconds;
+        int nSymbols;
+        double characterErrorRate;
+        long allocatedBytes = -1;        // -1 if the JVM can not tell
+
+        double realTimeFactor() {
+            return audioSeconds / cpuSeconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "RT x%8.1f  %9.0f symbols/s  CER %5.3f  alloc/s %s",
+                    realTimeFactor(), nSymbols / cpuSeconds, characterErrorRate,
+                    allocatedBytes < 0 ? "n/a" : String.format(Locale.US, "%.1f kB", allocatedBytes / audioSeconds / 1024));
+        }
+    }
+
+    static Result run(AnalyzerParameters analyzerParam, Scenario scenario, double snrDB, long seed) {
+        Random random = new Random(seed);
+        analyzerParam.sampleRate = SAMPLE_RATE;
+        ChannelPlan channelPlan = ChannelPlan.create(analyzerParam);
+
+        // the transmitter sends the carriers offsetHz off
+        double[] carrierHz = new double[channelPlan.size()];
+        for (int i = 0; i < carrierHz.length; i++) {
+            carrierHz[i] = channelPlan.getCarrierFrequency(i) + scenario.offsetHz;
+        }
+        ToneSynthesizer synthesizer = new ToneSynthesizer(new ChannelPlan(carrierHz, ChannelPlan.DEFAULT_REFERENCES_HZ,
+                SAMPLE_RATE, analyzerParam.fftLen), AMPLITUDE);
+        StringBuilder sent = new StringBuilder();
+        int nSymbols = 0;
+        for (int m = 0; m < scenario.nMessages; m++) {
+            StringBuilder message = new StringBuilder();
+            for (int i = 0; i < scenario.messageLength; i++) {
+                message.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+            }
+            synthesizer.sendSilence(0.5);
+            synthesizer.send(message.toString());
+            sent.append(sent.length() > 0 ? " " : "").append(message);
+            nSymbols += 2 * scenario.messageLength + 2;
+        }
+        synthesizer.sendSilence(0.5);
+        short[] samples = new short[(int) synthesizer.remaining()];
+        synthesizer.read(samples, 0, samples.length);
+        impair(samples, snrDB, scenario.dropoutsPerSecond, random);
+
+        MessageCollector collector = new MessageCollector(analyzerParam, 1);
+
+        Result result = new Result();
+        long allocatedBefore = ThreadCounters.allocatedBytes();
+        long start = ThreadCounters.cpuNanos();
+        collector.decode(samples, CHUNK);
+        result.cpuSeconds = (ThreadCounters.cpuNanos() - start) / 1e9;
+        long allocatedAfter = ThreadCounters.allocatedBytes();
+        if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+            result.allocatedBytes = allocatedAfter - allocatedBefore;
+        }
+        result.audioSeconds = (double) samples.length / SAMPLE_RATE;
+        result.nSymbols = nSymbols;
+        result.characterErrorRate = (double) editDistance(sent.toString(), collector.getText()) / sent.length();
+        return result;
+    }
+
+    // white noise for the SNR, then the dropouts
+    private static void impair(short[] samples, double snrDB, double dropoutsPerSecond, Random random) {
+        double tonePower = Math.pow(32767 * AMPLITUDE, 2) / 2;
+        double sigma = Math.sqrt(tonePower / Math.pow(10, snrDB / 10));
+        for (int i = 0; i < samples.length; i++) {
+            double x = samples[i] + sigma * random.nextGaussian();
+            samples[i] = (short) Math.max(Math.min(x, 32767), -32768);
+        }
+        int dropoutLen = SAMPLE_RATE / 50;
+        int nDropouts = (int) Math.round(dropoutsPerSecond * samples.length / SAMPLE_RATE);
+        for (int d = 0; d < nDropouts; d++) {
+            int at = random.nextInt(Math.max(samples.length - dropoutLen, 1));
+            for (int i = at; i < Math.min(at + dropoutLen, samples.length); i++) {
+                samples[i] = 0;
+            }
+        }
+    }
+
+    // Levenshtein distance
+    static int editDistance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] t = previous;
+            previous = current;
+            current = t;
+        }
+        return previous[b.length()];
+    }
+
+    @Test
+    public void cleanChannel_decodesWithoutErrors() {
+        Result result = run(new AnalyzerParameters(), new Scenario("clean", 0, 0, 2, 3), 30, 1);
+        assertEquals(0, result.characterErrorRate, 0);
+    }
+
+    public static void main(String[] args) {
+        double[] snrs = {30, 20, 10, 5, 0, -5, -10, -15};
+        Scenario[] scenarios = {
+                new Scenario("clean", 0, 0, 30, 5),
+                new Scenario("offset 40 Hz", 40, 0, 30, 5),
+                new Scenario("dropouts 2/s", 0, 2, 30, 5),
+        };
+        AnalyzerParameters analyzerParam = new AnalyzerParameters();
+        if (args.length > 0 && args[0].equals("soft")) {
+            analyzerParam.detectorConfig.softDecision = true;
+        }
+        System.out.println("Detector: " + analyzerParam.detectorConfig + ", fftLen " + analyzerParam.fftLen
+                + ", hopLen " + analyzerParam.hopLen);
+        run(analyzerParam, scenarios[0], 30, 0);   // warm-up for the JIT
+        for (Scenario scenario : scenarios) {
+            System.out.println(scenario.name);
+            for (double snr : snrs) {
+                System.out.println(String.format(Locale.US, "  SNR %5.1f dB  ", snr)
+                        + run(analyzerParam, scenario, snr, 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.phoneear;
+
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ShortBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FileAudioSourceTest {
+    private static final int SAMPLE_RATE = 44100;
+
+    // the protocol: 100 ms phase tone before every symbol, 900 ms start and end, 400 ms digits
+    private static short[] transmission(int[] carriers) {
+        int phaseLen = SAMPLE_RATE / 10;
+        int n = 0;
+        for (int carrier : carriers) {
+            n += phaseLen + symbolLength(carrier);
+        }
+        short[] samples = new short[n];
+        Random random = new Random(1);
+        int pos = 0;
+        for (int carrier : carriers) {
+            int symbolLen = symbolLength(carrier);
+            for (int i = 0; i < phaseLen + symbolLen; i++, pos++) {
+                double hz = ChannelPlan.DEFAULT_CARRIERS_HZ[i < phaseLen ? ChannelPlan.PHASE : carrier];
+                samples[pos] = (short) (3000 * Math.sin(2 * Math.PI * hz * pos / SAMPLE_RATE) + 100 * random.nextGaussian());
+            }
+        }
+        return samples;
+    }
+
+    private static int symbolLength(int carrier) {
+        return carrier == ChannelPlan.START || carrier == ChannelPlan.DEFAULT_CARRIERS_HZ.length - 1
+                ? 9 * SAMPLE_RATE / 10 : 4 * SAMPLE_RATE / 10;
+    }
+
+    private static File writeWav(short[] samples, int nChannels) throws IOException {
+        File file = File.createTempFile("phoneear", ".wav");
+        file.deleteOnExit();
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            out.writeBytes("RIFF");
+            out.writeInt(Integer.reverseBytes(36 + 2 * samples.length));
+            out.writeBytes("WAVEfmt ");
+            out.writeInt(Integer.reverseBytes(16));
+            out.writeShort(Short.reverseBytes((short) 1));
+            out.writeShort(Short.reverseBytes((short) nChannels));
+            out.writeInt(Integer.reverseBytes(SAMPLE_RATE));
+            out.writeInt(Integer.reverseBytes(2 * nChannels * SAMPLE_RATE));
+            out.writeShort(Short.reverseBytes((short) (2 * nChannels)));
+            out.writeShort(Short.reverseBytes((short) 16));
+            out.writeBytes("data");
+            out.writeInt(Integer.reverseBytes(2 * samples.length));
+            for (short s : samples) {
+                out.writeShort(Short.reverseBytes(s));
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void wavFile_isMappedWithItsFormat() throws IOException {
+        short[] samples = {1, -2, 300, -32768, 32767, 7};
+        FileAudioSource source = new FileAudioSource(writeWav(samples, 2), false);
+        assertEquals(SAMPLE_RATE, source.getSampleRate());
+        assertEquals(2, source.getChannelCount());
+        assertEquals(3, source.getFrames());
+        ShortBuffer mapped = source.samples();
+        for (int i = 0; i < samples.length; i++) {
+            assertEquals(samples[i], mapped.get(i));
+        }
+
+        // read() like a recorder, whole frames, 0 at the end
+        short[] chunk = new short[8];
+        source.startRecording();
+        assertEquals(4, source.read(chunk, 1, 5));
+        assertEquals(300, chunk[3]);
+        assertEquals(2, source.read(chunk, 0, 8));
+        assertEquals(0, source.read(chunk, 0, 8));
+    }
+
+    @Test
+    public void recording_decodesThroughThePipeline() throws IOException {
+        int[] carriers = {ChannelPlan.START, ChannelPlan.FIRST_DATA + 7, ChannelPlan.FIRST_DATA + 2,
+                ChannelPlan.DEFAULT_CARRIERS_HZ.length - 1};   // "72" is 'H'
+        FileAudioSource source = new FileAudioSource(writeWav(transmission(carriers), 1), false);
+
+        AnalyzerParameters analyzerParam = new AnalyzerParameters();
+        analyzerParam.sampleRate = source.getSampleRate();
+        MessageCollector collector = new MessageCollector(analyzerParam, source.getChannelCount());
+        collector.decode(source.samples(), 1024);
+        assertEquals("H", collector.getText());
+    }
+}
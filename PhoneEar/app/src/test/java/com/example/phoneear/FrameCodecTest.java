@@ -0,0 +1,159 @@
+package com.example.phoneear;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FrameCodecTest {
+    private static final byte[] PAYLOAD = "PUDDING".getBytes(Charset.forName("US-ASCII"));
+
+    @Test
+    public void crc16_matchesCheckValue() {
+        byte[] check = "123456789".getBytes(Charset.forName("US-ASCII"));
+        assertEquals(0x29B1, FrameCodec.crc16(check, 0, check.length));
+    }
+
+    @Test
+    public void symbolTable_isOneToOne() {
+        FrameCodec codec = new FrameCodec(new MultiToneCode(10, 3));
+        assertEquals(6, codec.getBitsPerSymbol());      // 120 code words
+        for (int symbol = 0; symbol < 64; symbol++) {
+            assertEquals(symbol, codec.symbolOf(codec.codeWordOf(symbol)));
+        }
+        assertEquals(4, new FrameCodec(new MultiToneCode(6, 3)).getBitsPerSymbol());   // 20 code words
+    }
+
+    @Test
+    public void sixBitSymbols_needFewerSymbolsThanNibbles() {
+        // 10 frame bytes: 14 instead of 20 symbols
+        assertEquals(14, FrameCodec.frameSymbols(PAYLOAD.length, 6));
+        assertEquals(20, FrameCodec.frameSymbols(PAYLOAD.length, 4));
+        assertEquals(14, FrameCodec.encode(PAYLOAD, 0, PAYLOAD.length, 6).length);
+    }
+
+    private static void assertValidOnLastSymbol(int bitsPerSymbol) {
+        int[] symbols = FrameCodec.encode(PAYLOAD, 0, PAYLOAD.length, bitsPerSymbol);
+        assertEquals(FrameCodec.frameSymbols(PAYLOAD.length, bitsPerSymbol), symbols.length);
+
+        FrameDecoder decoder = new FrameDecoder(bitsPerSymbol, 0);
+        for (int i = 0; i < symbols.length - 1; i++) {
+            assertEquals(FrameDecoder.INCOMPLETE, decoder.push(symbols[i]));
+        }
+        assertEquals(FrameDecoder.VALID, decoder.push(symbols[symbols.length - 1]));
+        assertEquals(PAYLOAD.length, decoder.getPayloadLength());
+        for (int i = 0; i < PAYLOAD.length; i++) {
+            assertEquals(PAYLOAD[i], decoder.getFrame()[i + 1]);
+        }
+    }
+
+    @Test
+    public void decoder_validatesFrameOnLastSymbol() {
+        for (int bits = ReedSolomon.MIN_BITS; bits <= ReedSolomon.MAX_BITS; bits++) {
+            assertValidOnLastSymbol(bits);
+        }
+    }
+
+    @Test
+    public void decoder_rejectsCorruptedFrame() {
+        int[] symbols = FrameCodec.encode(PAYLOAD, 0, PAYLOAD.length, 6);
+        symbols[5] ^= 0x4;
+
+        FrameDecoder decoder = new FrameDecoder(6, 0);
+        int state = FrameDecoder.INCOMPLETE;
+        for (int symbol : symbols) {
+            state = decoder.push(symbol);
+        }
+        assertEquals(FrameDecoder.INVALID, state);
+    }
+
+    @Test
+    public void fec_correctsErasuresAndErrors() {
+        int nParity = 4;
+        int[] symbols = FrameCodec.encode(PAYLOAD, 0, PAYLOAD.length, 4, nParity);
+        // 20 frame nibbles -> blocks of 11 + 4 and 9 + 4 symbols
+        assertEquals(28, symbols.length);
+
+        FrameDecoder decoder = new FrameDecoder(4, nParity);
+        int state = FrameDecoder.INCOMPLETE;
+        for (int i = 0; i < symbols.length; i++) {
+            if (i == 1 || i == 7 || i == 20) {
+                state = decoder.pushErasure();
+            } else if (i == 16) {
+                state = decoder.push(symbols[i] ^ 0x9);
+            } else {
+                state = decoder.push(symbols[i]);
+            }
+        }
+        assertEquals(FrameDecoder.VALID, state);
+        assertEquals(4, decoder.getCorrectedSymbols());
+        assertEquals(PAYLOAD.length, decoder.getPayloadLength());
+    }
+
+    @Test
+    public void fec_correctsSixBitSymbols() {
+        int nParity = 4;
+        int[] symbols = FrameCodec.encode(PAYLOAD, 0, PAYLOAD.length, 6, nParity);
+        // 14 frame symbols -> blocks of 11 + 4 and 3 + 4 symbols
+        assertEquals(22, symbols.length);
+
+        FrameDecoder decoder = new FrameDecoder(6, nParity);
+        int state = FrameDecoder.INCOMPLETE;
+        for (int i = 0; i < symbols.length; i++) {
+            if (i == 1 || i == 7 || i == 20) {
+                state = decoder.pushErasure();
+            } else if (i == 12 || i == 16) {
+                state = decoder.push(symbols[i] ^ 0x29);
+            } else {
+                state = decoder.push(symbols[i]);
+            }
+        }
+        assertEquals(FrameDecoder.VALID, state);
+        assertEquals(5, decoder.getCorrectedSymbols());
+        for (int i = 0; i < PAYLOAD.length; i++) {
+            assertEquals(PAYLOAD[i], decoder.getFrame()[i + 1]);
+        }
+    }
+
+    @Test
+    public void fec_shortFrameIsPaddedToOneBlock() {
+        int[] symbols = FrameCodec.encode(new byte[]{'A'}, 0, 1, 6, 4);
+        assertEquals(15, symbols.length);
+
+        FrameDecoder decoder = new FrameDecoder(6, 4);
+        int state = FrameDecoder.INCOMPLETE;
+        for (int i = 0; i < symbols.length; i++) {
+            state = i == 0 ? decoder.push(symbols[i] ^ 0x1) : decoder.push(symbols[i]);
+        }
+        assertEquals(FrameDecoder.VALID, state);
+        assertEquals('A', decoder.getFrame()[1]);
+    }
+
+    @Test
+    public void synthesizedFrame_decodes() {
+        AnalyzerParameters analyzerParam = new AnalyzerParameters();
+        analyzerParam.sampleRate = 44100;
+        analyzerParam.multiToneMode = true;
+        analyzerParam.binaryFraming = true;
+        ChannelPlan channelPlan = ChannelPlan.create(analyzerParam);
+        MultiToneCode code = new MultiToneCode(channelPlan.getDataCarriers(), analyzerParam.multiToneWeight);
+        ToneSynthesizer synthesizer = new ToneSynthesizer(channelPlan, 0.25);
+        synthesizer.sendSilence(0.5);
+        synthesizer.sendFrame(PAYLOAD, code, analyzerParam.fecParitySymbols);
+        synthesizer.sendSilence(0.5);
+        short[] samples = new short[(int) synthesizer.remaining()];
+        synthesizer.read(samples, 0, samples.length);
+        Random random = new Random(1);
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (samples[i] + 100 * random.nextGaussian());
+        }
+
+        MessageCollector collector = new MessageCollector(analyzerParam, 1);
+        collector.decode(samples, 2048);
+        assertEquals(1, collector.getMessages().size());
+        assertTrue(collector.getMessages().get(0).valid);
+        assertEquals("PUDDING", collector.getText());
+    }
+}
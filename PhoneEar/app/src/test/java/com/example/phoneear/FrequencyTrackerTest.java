@@ -0,0 +1,42 @@
+package com.example.phoneear;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class FrequencyTrackerTest {
+    private static final int SAMPLE_RATE = 44100;
+    private static final int FFT_LEN = 512;
+
+    // noise at -120 dB and a tone with a parabolic peak in dB at toneHz
+    private static double[] spectrumWithTone(double toneHz) {
+        double[] spectrumDB = new double[FFT_LEN / 2 + 1];
+        Arrays.fill(spectrumDB, -120);
+        double bin = toneHz * FFT_LEN / SAMPLE_RATE;
+        for (int k = (int) bin - 2; k <= (int) bin + 3; k++) {
+            spectrumDB[k] = Math.max(-40 - 6 * (k - bin) * (k - bin), -120);
+        }
+        return spectrumDB;
+    }
+
+    @Test
+    public void startSignal_locksOffset() {
+        ChannelPlan plan = new ChannelPlan(ChannelPlan.DEFAULT_CARRIERS_HZ, ChannelPlan.DEFAULT_REFERENCES_HZ,
+                SAMPLE_RATE, FFT_LEN);
+        FrequencyTracker tracker = new FrequencyTracker(plan);
+        assertTrue(tracker.update(spectrumWithTone(17830)));
+        assertEquals(30, tracker.getOffsetHz(), 0.5);
+        assertEquals(17830.0 / 17800, tracker.getChannelPlan().getScale(), 1e-4);
+    }
+
+    @Test
+    public void dataTone_isNotUsed() {
+        ChannelPlan plan = new ChannelPlan(ChannelPlan.DEFAULT_CARRIERS_HZ, ChannelPlan.DEFAULT_REFERENCES_HZ,
+                SAMPLE_RATE, FFT_LEN);
+        FrequencyTracker tracker = new FrequencyTracker(plan);
+        assertFalse(tracker.update(spectrumWithTone(18430)));
+        assertEquals(0, tracker.getMeasurements());
+    }
+}
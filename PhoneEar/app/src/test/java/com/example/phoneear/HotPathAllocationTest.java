@@ -0,0 +1,128 @@
+package com.example.phoneear;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * The analysis must not allocate once it runs: garbage on the sampling thread ends in GC pauses,
+ * and those in recorder overruns. Fails if the pipeline allocates more than MAX_BYTES_PER_SECOND
+ * per second of audio after a warm-up, while listening to noise or receiving messages.
+ *
+ * The bound leaves room for the String of every decoded message and for what the JIT allocates on
+ * the thread while it installs code; a buffer allocated for every measurement (about 11 per second)
+ * exceeds it. Runs in the allocationTest task of build.gradle, with foreground compilation.
+ */
+public class HotPathAllocationTest {
+    private static final int SAMPLE_RATE = 44100;
+    private static final int CHUNK = 2048;
+    private static final int WARM_UP_SECONDS = 120;
+    private static final int MEASURED_SECONDS = 60;
+    private static final double MAX_BYTES_PER_SECOND = 64;
+
+    // nothing to show, keeps nothing: the decoded String is all a message may cost
+    private static class CountingOutput implements MessageDecoder.Output {
+        int nMessages;
+
+        @Override
+        public void append(String text) {
+        }
+
+        @Override
+        public void messageDecoded(String message, boolean valid) {
+            nMessages++;
+        }
+    }
+
+    // Bytes allocated by the pipeline per second of audio in MEASURED_SECONDS of the samples, repeated,
+    // after WARM_UP_SECONDS of them: some buffers are only allocated some ticks after start().
+    private static double steadyStateAllocation(AnalyzerParameters analyzerParam, int nChannels, short[] samples,
+                                                CountingOutput output) {
+        assumeTrue("no allocation counter in this JVM", ThreadCounters.allocatedBytes() >= 0);
+        MessageCollector collector = new MessageCollector(analyzerParam, nChannels, output);
+        int seconds = samples.length / nChannels / SAMPLE_RATE;
+        collector.getPipeline().start();
+        for (int s = 0; s < WARM_UP_SECONDS; s += seconds) {
+            collector.feed(samples, CHUNK);
+        }
+        output.nMessages = 0;
+        int measured = 0;
+        long before = ThreadCounters.allocatedBytes();
+        for (; measured < MEASURED_SECONDS; measured += seconds) {
+            collector.feed(samples, CHUNK);
+        }
+        long allocated = ThreadCounters.allocatedBytes() - before;
+        collector.getPipeline().finish();
+        return (double) allocated / measured;
+    }
+
+    private static double noiseAllocation(AnalyzerParameters analyzerParam, int nChannels) {
+        analyzerParam.sampleRate = SAMPLE_RATE;
+        short[] noise = new short[10 * SAMPLE_RATE * nChannels];
+        Random random = new Random(1);
+        for (int i = 0; i < noise.length; i++) {
+            noise[i] = (short) (300 * random.nextGaussian());
+        }
+        return steadyStateAllocation(analyzerParam, nChannels, noise, new CountingOutput());
+    }
+
+    @Test
+    public void softDecision_doesNotAllocate() {
+        AnalyzerParameters analyzerParam = new AnalyzerParameters();
+        analyzerParam.detectorConfig.softDecision = true;
+        double bytesPerSecond = noiseAllocation(analyzerParam, 1);
+        assertTrue(bytesPerSecond + " bytes/s", bytesPerSecond <= MAX_BYTES_PER_SECOND);
+    }
+
+    @Test
+    public void stereoWithNoiseFloorAndTracking_doesNotAllocate() {
+        AnalyzerParameters analyzerParam = new AnalyzerParameters();
+        analyzerParam.detectorConfig.softDecision = true;
+        analyzerParam.detectorConfig.adaptiveNoiseFloor = true;
+        analyzerParam.detectorConfig.trackFrequency = true;
+        double bytesPerSecond = noiseAllocation(analyzerParam, 2);
+        assertTrue(bytesPerSecond + " bytes/s", bytesPerSecond <= MAX_BYTES_PER_SECOND);
+    }
+
+    @Test
+    public void hardDecision_doesNotAllocate() {
+        double bytesPerSecond = noiseAllocation(new AnalyzerParameters(), 1);
+        assertTrue(bytesPerSecond + " bytes/s", bytesPerSecond <= MAX_BYTES_PER_SECOND);
+    }
+
+    private static void assertMessagesBarelyAllocate(AnalyzerParameters analyzerParam) {
+        analyzerParam.sampleRate = SAMPLE_RATE;
+        ToneSynthesizer synthesizer = new ToneSynthesizer(ChannelPlan.create(analyzerParam), 0.25);
+        for (String message : new String[]{"HELLO", "WORLD"}) {
+            synthesizer.sendSilence(0.5);
+            synthesizer.send(message);
+        }
+        synthesizer.sendSilence(0.5);
+        short[] samples = new short[(int) synthesizer.remaining()];
+        synthesizer.read(samples, 0, samples.length);
+        Random random = new Random(1);
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (samples[i] + 300 * random.nextGaussian());
+        }
+
+        CountingOutput output = new CountingOutput();
+        double bytesPerSecond = steadyStateAllocation(analyzerParam, 1, samples, output);
+        assertTrue(output.nMessages > 0);
+        assertTrue(bytesPerSecond + " bytes/s", bytesPerSecond <= MAX_BYTES_PER_SECOND);
+    }
+
+    @Test
+    public void receivingMessages_barelyAllocates() {
+        assertMessagesBarelyAllocate(new AnalyzerParameters());
+    }
+
+    @Test
+    public void receivingMessagesSoft_barelyAllocates() {
+        AnalyzerParameters analyzerParam = new AnalyzerParameters();
+        analyzerParam.detectorConfig.softDecision = true;
+        assertMessagesBarelyAllocate(analyzerParam);
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.phoneear;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+    @Test
+    public void buckets_areWithinSixPercent() {
+        for (long v = 1; v > 0 && v < Long.MAX_VALUE / 3; v = v * 3 + 1) {
+            int index = LatencyHistogram.index(v);
+            long low = LatencyHistogram.lowestValue(index);
+            long high = LatencyHistogram.lowestValue(index + 1) - 1;
+            assertTrue(v + " in [" + low + ", " + high + "]", low <= v && v <= high);
+            assertTrue(high - low <= Math.max(low / 16, 0));
+        }
+    }
+
+    @Test
+    public void percentiles_ofUniformValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500000, histogram.percentile(0.5), 500000 / 16.0);
+        assertEquals(990000, histogram.percentile(0.99), 990000 / 16.0);
+        assertEquals(1000000, histogram.getMax(), 1000000 / 16.0);
+
+        // the values between two copies
+        LatencyHistogram before = new LatencyHistogram();
+        histogram.copyInto(before);
+        histogram.record(7);
+        LatencyHistogram interval = new LatencyHistogram();
+        interval.difference(histogram, before);
+        assertEquals(1, interval.getCount());
+        assertEquals(7, interval.getMax());
+    }
+}
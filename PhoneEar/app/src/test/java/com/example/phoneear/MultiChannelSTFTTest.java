@@ -0,0 +1,97 @@
+package com.example.phoneear;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class MultiChannelSTFTTest {
+    private static final int SAMPLE_RATE = 44100;
+    private static final int FFT_LEN = 512;
+
+    private static ChannelPlan plan() {
+        return new ChannelPlan(ChannelPlan.DEFAULT_CARRIERS_HZ, ChannelPlan.DEFAULT_REFERENCES_HZ, SAMPLE_RATE, FFT_LEN);
+    }
+
+    private static MultiChannelSTFT stereo(boolean maxSnrSelection) {
+        ShortTimeFT[] stfts = {
+                new ShortTimeFT(FFT_LEN, FFT_LEN, SAMPLE_RATE, 1, "Hanning"),
+                new ShortTimeFT(FFT_LEN, FFT_LEN, SAMPLE_RATE, 1, "Hanning")};
+        return new MultiChannelSTFT(stfts, plan(), maxSnrSelection);
+    }
+
+    // flat noise and one carrier snrDB above it
+    private static double[] spectrum(double noiseDB, int carrier, double snrDB) {
+        double[] spectrumDB = new double[FFT_LEN / 2 + 1];
+        Arrays.fill(spectrumDB, noiseDB);
+        int bin = plan().getCarrierBin(carrier);
+        spectrumDB[bin - 1] = noiseDB + snrDB;
+        spectrumDB[bin] = noiseDB + snrDB;
+        spectrumDB[bin + 1] = noiseDB + snrDB;
+        return spectrumDB;
+    }
+
+    @Test
+    public void maxSnr_selectsBetterMicrophone() {
+        MultiChannelSTFT stft = stereo(true);
+        double[] weak = spectrum(-90, 5, 6);
+        double[] strong = spectrum(-100, 5, 30);
+        double[] combined = stft.combine(new double[][]{weak, strong});
+        assertEquals(1, stft.getBestChannel());
+        assertArrayEquals(strong, combined, 0);
+    }
+
+    @Test
+    public void weighted_keepsCarrierAboveNoise() {
+        MultiChannelSTFT stft = stereo(false);
+        double[] combined = stft.combine(new double[][]{spectrum(-90, 5, 6), spectrum(-100, 5, 30)});
+        ChannelPlan plan = plan();
+        double snr = plan.carrierLevel(combined, 5) - plan.referenceLevel(combined);
+        // dominated by the strong microphone, much better than the weak one alone
+        assertTrue(snr > 25);
+        assertEquals(-95, plan.referenceLevel(combined), 1e-6);
+    }
+
+    @Test
+    public void weighted_takesOtherBinsFromBestChannel() {
+        MultiChannelSTFT stft = stereo(false);
+        double[] weak = spectrum(-90, 5, 6);
+        double[] strong = spectrum(-100, 5, 30);
+        weak[10] = -70;
+        strong[10] = -110;
+        double[] combined = stft.combine(new double[][]{weak, strong});
+        // far below the band: the strong microphone moved to the mean comparison level of -95 dB
+        assertEquals(-105, combined[10], 1e-6);
+        assertEquals(-95, combined[20], 1e-6);
+    }
+
+    private static void assertChannelsSeparated(boolean channelThreads) {
+        MultiChannelSTFT stft = stereo(true);
+        stft.start(1, channelThreads);
+        try {
+            short[] samples = new short[2 * 4 * FFT_LEN];
+            for (int i = 0; i < samples.length / 2; i++) {
+                // 18.0 kHz (digit 0) only on the right channel
+                samples[2 * i + 1] = (short) (10000 * Math.sin(2 * Math.PI * 18000.0 * i / SAMPLE_RATE));
+                samples[2 * i] = (short) (i % 7 - 3);
+            }
+            stft.feedData(samples, 0, samples.length);
+            assertTrue(stft.nElemSpectrumAmp() > 0);
+            stft.getSpectrumAmpDB();
+            assertEquals(1, stft.getBestChannel());
+        } finally {
+            stft.stop();
+        }
+    }
+
+    @Test
+    public void interleavedChannels_areSeparated() {
+        assertChannelsSeparated(true);
+    }
+
+    @Test
+    public void withoutChannelThreads_channelsAreSeparated() {
+        assertChannelsSeparated(false);
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.phoneear;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MultiToneCodeTest {
+    private static final int SAMPLE_RATE = 44100;
+    private static final int OFFSET = ChannelPlan.FIRST_DATA;
+
+    @Test
+    public void everyCodeWord_hasItsValueBack() {
+        MultiToneCode code = new MultiToneCode(10, 3);
+        assertEquals(120, code.size());
+        assertEquals(2, code.getDigitsPerSymbol());
+        for (int v = 0; v < code.size(); v++) {
+            int mask = code.maskOf(v);
+            assertEquals(3, Integer.bitCount(mask));
+            assertTrue(mask < 1 << 10);
+            assertEquals(v, code.valueOf(mask));
+        }
+        // other weights and masks beyond the carriers are no code words
+        assertEquals(-1, code.valueOf(0));
+        assertEquals(-1, code.valueOf(0x3));
+        assertEquals(-1, code.valueOf(0xf));
+        assertEquals(-1, code.valueOf(0x7 << 8));
+        assertEquals(-1, code.valueOf(-1));
+
+        assertEquals("72", code.digitsOf(72));
+        assertEquals("05", code.digitsOf(5));
+        assertEquals("__", code.digitsOf(100));
+        assertEquals("__", code.digitsOf(-1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void weightAboveCarriers_isRejected() {
+        new MultiToneCode(4, 5);
+    }
+
+    // levels of the data carriers behind the phase and the starting signal
+    private static int[] levels(int... dataLevels) {
+        int[] levels = new int[OFFSET + dataLevels.length + 1];
+        levels[ChannelPlan.PHASE] = 90;     // not looked at
+        System.arraycopy(dataLevels, 0, levels, OFFSET, dataLevels.length);
+        return levels;
+    }
+
+    @Test
+    public void detect_takesTheStrongestCarriers() {
+        MultiToneCode code = new MultiToneCode(10, 3);
+        int[] levels = levels(-80, -30, -75, -80, -35, -80, -78, -32, -80, -80);
+        assertEquals((1 << 1) | (1 << 4) | (1 << 7), code.detect(levels, OFFSET, -60));
+    }
+
+    @Test
+    public void detect_tie_takesTheLowerCarrier() {
+        MultiToneCode code = new MultiToneCode(10, 3);
+        int[] levels = levels(-80, -30, -40, -80, -80, -40, -80, -30, -80, -40);
+        assertEquals((1 << 1) | (1 << 2) | (1 << 7), code.detect(levels, OFFSET, -60));
+    }
+
+    @Test
+    public void detect_weakestBelowThreshold_isNoCodeWord() {
+        MultiToneCode code = new MultiToneCode(10, 3);
+        int[] levels = levels(-80, -30, -75, -80, -35, -80, -78, -60, -80, -80);
+        assertEquals(-1, code.detect(levels, OFFSET, -60));    // the third is not above it
+        assertEquals((1 << 1) | (1 << 4) | (1 << 7), code.detect(levels, OFFSET, -61));
+    }
+
+    @Test
+    public void synthesizedMultiTone_decodes() {
+        AnalyzerParameters analyzerParam = new AnalyzerParameters();
+        analyzerParam.sampleRate = SAMPLE_RATE;
+        analyzerParam.multiToneMode = true;
+        ChannelPlan channelPlan = ChannelPlan.create(analyzerParam);
+        MultiToneCode code = new MultiToneCode(channelPlan.getDataCarriers(), analyzerParam.multiToneWeight);
+        ToneSynthesizer synthesizer = new ToneSynthesizer(channelPlan, 0.25);
+        for (String message : new String[]{"HELLO", "WORLD"}) {
+            synthesizer.sendSilence(0.5);
+            synthesizer.sendMultiTone(message, code);
+        }
+        synthesizer.sendSilence(0.5);
+        short[] samples = new short[(int) synthesizer.remaining()];
+        synthesizer.read(samples, 0, samples.length);
+        Random random = new Random(1);
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (samples[i] + 100 * random.nextGaussian());
+        }
+
+        MessageCollector collector = new MessageCollector(analyzerParam, 1);
+        collector.decode(samples, 2048);
+        assertEquals("HELLO WORLD", collector.getText());
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.phoneear;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class NoiseFloorTest {
+    private static final int DIGIT_7 = ChannelPlan.FIRST_DATA + 7;
+    private static final double TONE_LEVEL_DB = -20;
+
+    private final ChannelPlan plan = new ChannelPlan(ChannelPlan.DEFAULT_CARRIERS_HZ, ChannelPlan.DEFAULT_REFERENCES_HZ, 44100, 512);
+    private final NoiseFloor noiseFloor = new NoiseFloor(plan.size());
+    private final Random random = new Random(1);
+    private final double[] spectrumDB = new double[257];
+
+    // noise of the given level (per bin) with 2 dB deviation, the carriers of tones at TONE_LEVEL_DB
+    private void measure(double[] noiseDB, int... tones) {
+        for (int bin = 0; bin < spectrumDB.length; bin++) {
+            spectrumDB[bin] = noiseDB[bin] + 2 * random.nextGaussian();
+        }
+        for (int carrier : tones) {
+            spectrumDB[plan.getCarrierBin(carrier)] = TONE_LEVEL_DB;
+            spectrumDB[plan.getCarrierBin(carrier) - 1] = TONE_LEVEL_DB;
+            spectrumDB[plan.getCarrierBin(carrier) + 1] = TONE_LEVEL_DB;
+        }
+        noiseFloor.update(plan, spectrumDB);
+    }
+
+    private static double[] flat(double levelDB) {
+        double[] noiseDB = new double[257];
+        for (int bin = 0; bin < noiseDB.length; bin++) {
+            noiseDB[bin] = levelDB;
+        }
+        return noiseDB;
+    }
+
+    @Test
+    public void repeatedSymbol_keepsItsSnr() {
+        double[] noiseDB = flat(-80);
+        for (int i = 0; i < 10; i++) {
+            measure(noiseDB);
+        }
+        // "7777...": the carrier stays on through the phase tones, longer than the history
+        for (int symbol = 0; symbol < 3 * NoiseFloor.HISTORY / 5; symbol++) {
+            measure(noiseDB, ChannelPlan.PHASE, DIGIT_7);
+            for (int i = 0; i < 4; i++) {
+                measure(noiseDB, DIGIT_7);
+            }
+            assertTrue("symbol " + symbol + ": SNR " + noiseFloor.snr(DIGIT_7), noiseFloor.snr(DIGIT_7) > 40);
+        }
+        assertEquals(-80, noiseFloor.getFloor(DIGIT_7), NoiseFloor.BIAS_DB);
+    }
+
+    @Test
+    public void nonFlatNoise_getsAFloorPerCarrier() {
+        // rising with the frequency, and a whine at the digit 7
+        double[] noiseDB = new double[257];
+        for (int bin = 0; bin < noiseDB.length; bin++) {
+            noiseDB[bin] = -100 + 0.2 * bin;
+        }
+        noiseDB[plan.getCarrierBin(DIGIT_7)] = -50;
+        noiseDB[plan.getCarrierBin(DIGIT_7) + 1] = -50;
+        noiseDB[plan.getCarrierBin(DIGIT_7) - 1] = -50;
+        for (int i = 0; i < NoiseFloor.HISTORY; i++) {
+            measure(noiseDB);
+        }
+        for (int carrier = 0; carrier < plan.size(); carrier++) {
+            double levelDB = plan.carrierLevel(noiseDB, carrier);
+            assertEquals("carrier " + carrier, levelDB, noiseFloor.getFloor(carrier), NoiseFloor.BIAS_DB);
+            assertTrue("carrier " + carrier, noiseFloor.snr(carrier) < NoiseFloor.TONE_DB);
+        }
+        // a tone stands out against its own floor only
+        measure(noiseDB, DIGIT_7);
+        assertTrue(noiseFloor.snr(DIGIT_7) > 20);
+        assertTrue(noiseFloor.snr(ChannelPlan.FIRST_DATA) < NoiseFloor.TONE_DB);
+    }
+
+    @Test
+    public void steadyInterference_raisesTheFloor() {
+        double[] noiseDB = flat(-80);
+        for (int i = 0; i < 10; i++) {
+            measure(noiseDB);
+        }
+        // a whine that starts in the middle of the recording is no symbol once it lasts long enough
+        for (int i = 0; i <= NoiseFloor.MAX_TONE + NoiseFloor.HISTORY; i++) {
+            measure(noiseDB, DIGIT_7);
+        }
+        assertTrue(noiseFloor.snr(DIGIT_7) < NoiseFloor.TONE_DB);
+        assertEquals(-80, noiseFloor.getFloor(ChannelPlan.FIRST_DATA), NoiseFloor.BIAS_DB);
+    }
+
+    @Test
+    public void reset_forgetsTheQuietNoiseBeforeStandby() {
+        for (int i = 0; i < NoiseFloor.HISTORY; i++) {
+            measure(flat(-80));
+        }
+        noiseFloor.reset();
+        // louder noise after the standby, the first measurement already holds the starting signal
+        double[] noiseDB = flat(-60);
+        for (int i = 0; i < 5; i++) {
+            measure(noiseDB, ChannelPlan.START);
+            assertTrue("measurement " + i + ": SNR " + noiseFloor.snr(ChannelPlan.START),
+                    noiseFloor.snr(ChannelPlan.START) > 30);
+        }
+        assertEquals(-60, noiseFloor.getFloor(ChannelPlan.FIRST_DATA), NoiseFloor.BIAS_DB);
+        assertTrue(noiseFloor.snr(ChannelPlan.FIRST_DATA) < NoiseFloor.TONE_DB);
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.phoneear;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ParallelDecoderTest {
+
+    @Test
+    public void variants_startWithTheBaseAndDiffer() {
+        DetectorConfig base = new DetectorConfig();
+        DetectorConfig[] configs = DetectorConfig.variants(base, 10);
+        assertEquals(DetectorConfig.MAX_VARIANTS, configs.length);
+        assertEquals(base.toString(), configs[0].toString());
+        assertNotSame(base, configs[0]);
+        assertTrue(configs[1].softDecision);
+        // more sensitive and more strict around the base
+        assertTrue(configs[2].votesNeeded < base.votesNeeded && configs[2].thresholdFactor > base.thresholdFactor);
+        assertTrue(configs[3].votesNeeded > base.votesNeeded && configs[3].thresholdFactor < base.thresholdFactor);
+        Set<String> distinct = new HashSet<>();
+        for (DetectorConfig c : configs) {
+            distinct.add(c.toString());
+        }
+        assertEquals(configs.length, distinct.size());
+        // the base is not changed
+        assertEquals(new DetectorConfig().toString(), base.toString());
+
+        assertEquals(1, DetectorConfig.variants(base, 1).length);
+        base.votesNeeded = 2;
+        assertEquals(2, DetectorConfig.variants(base, 3)[2].votesNeeded);
+    }
+
+    @Test
+    public void offer_acceptsEachTransmissionOnce() {
+        AnalyzerParameters analyzerParam = new AnalyzerParameters();
+        ChannelPlan channelPlan = ChannelPlan.create(analyzerParam);
+        DetectorConfig[] configs = DetectorConfig.variants(new DetectorConfig(), 3);
+        final List<String> accepted = new ArrayList<>();
+        final List<DetectorConfig> acceptedBy = new ArrayList<>();
+        ParallelDecoder decoder = new ParallelDecoder(analyzerParam, channelPlan,
+                new MultiToneCode(channelPlan.getDataCarriers(), analyzerParam.multiToneWeight), configs,
+                new ParallelDecoder.Listener() {
+                    @Override
+                    public void messageAccepted(String message, DetectorConfig config) {
+                        accepted.add(message);
+                        acceptedBy.add(config);
+                    }
+                });
+
+        decoder.offer(1, 10, 50, "HELLO", true);
+        decoder.offer(0, 11, 52, "HELLO", true);     // the same transmission, finished later
+        decoder.offer(2, 10, 49, "HELXO", false);    // invalid
+        decoder.offer(2, 60, 99, "W_RLD", false);
+        decoder.offer(0, 61, 100, "WORLD", true);    // the next one
+        decoder.offer(1, 60, 101, "WORLD", true);
+
+        assertEquals(2, accepted.size());
+        assertEquals("HELLO", accepted.get(0));
+        assertSame(configs[1], acceptedBy.get(0));
+        assertEquals("WORLD", accepted.get(1));
+        assertSame(configs[0], acceptedBy.get(1));
+    }
+
+    @Test
+    public void workers_decodeTheSharedSpectra() throws InterruptedException {
+        AnalyzerParameters analyzerParam = new AnalyzerParameters();
+        analyzerParam.sampleRate = 44100;
+        analyzerParam.parallelDecoders = 3;
+        ToneSynthesizer synthesizer = new ToneSynthesizer(ChannelPlan.create(analyzerParam), 0.25);
+        for (String message : new String[]{"HELLO", "WORLD"}) {
+            synthesizer.sendSilence(0.5);
+            synthesizer.send(message);
+        }
+        synthesizer.sendSilence(0.5);
+        short[] samples = new short[(int) synthesizer.remaining()];
+        synthesizer.read(samples, 0, samples.length);
+        Random random = new Random(1);
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (samples[i] + 100 * random.nextGaussian());
+        }
+        // at a pace the workers keep up with, they drop what they fall behind on
+        MessageCollector collector = new MessageCollector(analyzerParam, 1);
+        AnalysisPipeline pipeline = collector.getPipeline();
+        pipeline.start();
+        for (int offset = 0; offset < samples.length; offset += 2048) {
+            pipeline.process(samples, offset, Math.min(2048, samples.length - offset), false);
+            Thread.sleep(1);
+        }
+        pipeline.finish();
+        assertEquals("HELLO WORLD", collector.getText());
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.phoneear;
+
+import com.google.corp.productivity.specialprojects.android.fft.RealDoubleFFT;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+Sources:
+https://openjdk.java.net/projects/code-tools/jmh/
+https://hg.openjdk.java.net/code-tools/jmh/file/tip/jmh-samples/src/main/java/org/openjdk/jmh/samples/
+ */
+
+/**
+ * JMH benchmarks of the passes of ShortTimeFT, apart from the FFT itself:
+ *   feedData          one read chunk: short to double, RMS, window, shift of the overlap and the FFTs
+ *                     of the frames it completes
+ *   fft               the FFT of one frame alone, to subtract from feedData
+ *   getSpectrumAmpDB  one spectrum: average, micGain, A-weighting and log10
+ *
+ * For every fftLen:hopLen, read chunk size and with A-weighting and calibration on or off.
+ * main() runs them all with the GC profiler (allocation per operation), on the classpath of the unit tests.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShortTimeFTBenchmark {
+    private static final int SAMPLE_RATE = 44100;
+
+    @Param({"512:1024", "512:256", "2048:1024", "2048:512", "4096:1024"})
+    public String fftAndHop;
+
+    @Param({"256", "2048"})
+    public int chunk;
+
+    @Param({"false", "true"})
+    public boolean aWeighting;
+
+    @Param({"false", "true"})
+    public boolean calibration;
+
+    private ShortTimeFT stft;
+    private RealDoubleFFT fft;
+    private short[] samples;
+    private double[] frame;
+    private double[] work;
+    private int hopLen;
+    private int offset;
+
+    @Setup
+    public void setUp() {
+        String[] s = fftAndHop.split(":");
+        AnalyzerParameters analyzerParam = new AnalyzerParameters();
+        analyzerParam.sampleRate = SAMPLE_RATE;
+        analyzerParam.fftLen = Integer.parseInt(s[0]);
+        analyzerParam.hopLen = hopLen = Integer.parseInt(s[1]);
+        if (calibration) {
+            analyzerParam.micGainDB = new double[analyzerParam.fftLen / 2 + 1];
+        }
+        stft = new ShortTimeFT(analyzerParam);
+        stft.setAWeighting(aWeighting);
+        fft = new RealDoubleFFT(analyzerParam.fftLen);
+
+        // a second of noise with a carrier, read round
+        Random random = new Random(1);
+        samples = new short[SAMPLE_RATE];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (3000 * Math.sin(2 * Math.PI * 18000 * i / SAMPLE_RATE) + 300 * random.nextGaussian());
+        }
+        frame = new double[analyzerParam.fftLen];
+        work = new double[analyzerParam.fftLen];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = samples[i] / 32768.0;
+        }
+    }
+
+    private void feed(int len) {
+        if (offset + len > samples.length) {
+            offset = 0;
+        }
+        stft.feedData(samples, offset, len);
+        offset += len;
+    }
+
+    // A new spectrum for every getSpectrumAmpDB() call, the feeding is not measured.
+    // A state of its own, so the other benchmarks are measured without per-invocation setup.
+    @State(Scope.Thread)
+    public static class NewSpectrum {
+        @Setup(Level.Invocation)
+        public void feedOneHop(ShortTimeFTBenchmark benchmark) {
+            if (benchmark.stft.nElemSpectrumAmp() == 0) {
+                benchmark.feed(Math.min(benchmark.hopLen, benchmark.samples.length));
+            }
+        }
+    }
+
+    @Benchmark
+    public int feedData() {
+        feed(chunk);
+        return stft.nElemSpectrumAmp();
+    }
+
+    @Benchmark
+    public double[] fft() {
+        // the transform is in place, start from the same frame every time (feedData copies as well)
+        System.arraycopy(frame, 0, work, 0, frame.length);
+        fft.ft(work);
+        return work;
+    }
+
+    @Benchmark
+    public void getSpectrumAmpDB(NewSpectrum newSpectrum, Blackhole blackhole) {
+        blackhole.consume(stft.getSpectrumAmpDB());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ShortTimeFTBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.phoneear;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ShortTimeFTTest {
+
+    private static short[] chirp(int n) {
+        short[] samples = new short[n];
+        for (int i = 0; i < n; i++) {
+            samples[i] = (short) (8000 * Math.sin(2 * Math.PI * (1000 + i * 0.2) * i / 48000));
+        }
+        return samples;
+    }
+
+    @Test
+    public void workers_giveSameSpectraInSameOrder() {
+        int fftLen = 4096;
+        int hopLen = 512;       // 87.5 % overlap
+        int nFFTAverage = 4;
+        short[] samples = chirp(48000);
+        ShortTimeFT single = new ShortTimeFT(fftLen, hopLen, 48000, nFFTAverage, "Hanning");
+        ShortTimeFT striped = new ShortTimeFT(fftLen, hopLen, 48000, nFFTAverage, "Hanning");
+        striped.startWorkers(3);
+        List<double[]> singleSpectra = new ArrayList<>();
+        List<double[]> stripedSpectra = new ArrayList<>();
+        try {
+            // one hop per call, so a spectrum is taken as soon as it has nFFTAverage frames
+            for (int offset = 0; offset + hopLen <= samples.length; offset += hopLen) {
+                single.feedData(samples, offset, hopLen);
+                if (single.nElemSpectrumAmp() >= nFFTAverage) {
+                    singleSpectra.add(single.getSpectrumAmpDB().clone());
+                }
+                striped.feedData(samples, offset, hopLen);
+                if (striped.nElemSpectrumAmp() >= nFFTAverage) {
+                    stripedSpectra.add(striped.getSpectrumAmpDB().clone());
+                }
+            }
+        } finally {
+            striped.stopWorkers();
+        }
+        // the workers deliver two frames later, but every spectrum averages the same frames
+        assertTrue(stripedSpectra.size() > 10);
+        for (int i = 0; i < stripedSpectra.size(); i++) {
+            assertArrayEquals(singleSpectra.get(i), stripedSpectra.get(i), 1e-9);
+        }
+    }
+}
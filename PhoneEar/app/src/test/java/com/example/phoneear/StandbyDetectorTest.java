@@ -0,0 +1,116 @@
+package com.example.phoneear;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StandbyDetectorTest {
+    private static final int SAMPLE_RATE = 44100;
+
+    private static short[] signal(double toneHz, double toneAmplitude, int n) {
+        Random random = new Random(1);
+        short[] samples = new short[n];
+        for (int i = 0; i < n; i++) {
+            double x = toneAmplitude * Math.sin(2 * Math.PI * toneHz * i / SAMPLE_RATE) + 300 * random.nextGaussian();
+            samples[i] = (short) Math.max(Math.min(x, 32767), -32768);
+        }
+        return samples;
+    }
+
+    private static StandbyDetector detector() {
+        return new StandbyDetector(new ChannelPlan(ChannelPlan.DEFAULT_CARRIERS_HZ, ChannelPlan.DEFAULT_REFERENCES_HZ,
+                SAMPLE_RATE, 512));
+    }
+
+    @Test
+    public void startSignal_wakesUp() {
+        short[] samples = signal(17800, 3000, 4096);
+        assertTrue(detector().feedData(samples, 0, samples.length));
+    }
+
+    @Test
+    public void noiseAndDataTones_doNotWakeUp() {
+        short[] noise = signal(17800, 0, 8192);
+        assertFalse(detector().feedData(noise, 0, noise.length));
+        short[] digit = signal(18600, 3000, 8192);
+        assertFalse(detector().feedData(digit, 0, digit.length));
+    }
+
+    // left and right interleaved
+    private static short[] stereo(short[] left, short[] right) {
+        short[] samples = new short[2 * left.length];
+        for (int i = 0; i < left.length; i++) {
+            samples[2 * i] = left[i];
+            samples[2 * i + 1] = right[i];
+        }
+        return samples;
+    }
+
+    private static StandbyDetector stereoDetector() {
+        return new StandbyDetector(new ChannelPlan(ChannelPlan.DEFAULT_CARRIERS_HZ, ChannelPlan.DEFAULT_REFERENCES_HZ,
+                SAMPLE_RATE, 512), 2);
+    }
+
+    @Test
+    public void startSignalOnOneChannel_wakesUp() {
+        short[] noise = signal(17800, 0, 4096);
+        short[] start = signal(17800, 3000, 4096);
+        short[] right = stereo(noise, start);
+        assertTrue(stereoDetector().feedData(right, 0, right.length));
+        short[] left = stereo(start, noise);
+        assertTrue(stereoDetector().feedData(left, 0, left.length));
+    }
+
+    @Test
+    public void stereoNoise_doesNotWakeUp() {
+        short[] noise = signal(17800, 0, 8192);
+        short[] digit = signal(18600, 3000, 8192);
+        short[] samples = stereo(noise, digit);
+        assertFalse(stereoDetector().feedData(samples, 0, samples.length));
+    }
+
+    @Test
+    public void wakingChunk_isAnalysed() {
+        AnalyzerParameters analyzerParam = new AnalyzerParameters();
+        analyzerParam.sampleRate = SAMPLE_RATE;
+        analyzerParam.standbyMode = true;
+        final int[] nSpectra = new int[1];
+        final boolean[] standby = new boolean[1];
+        AnalysisPipeline pipeline = new AnalysisPipeline(analyzerParam, 1, new MessageDecoder.Output() {
+            @Override
+            public void append(String text) {
+            }
+
+            @Override
+            public void messageDecoded(String message, boolean valid) {
+            }
+        }, new AnalysisPipeline.Listener() {
+            @Override
+            public void spectrumReady(double[] spectrumDB) {
+                nSpectra[0]++;
+            }
+
+            @Override
+            public void standbyChanged(boolean isStandby) {
+                standby[0] = isStandby;
+            }
+        });
+        pipeline.start();
+        try {
+            short[] samples = signal(17800, 3000, SAMPLE_RATE);
+            int chunk = 2048;
+            int offset = 0;
+            while (standby[0] && offset + chunk <= samples.length) {
+                pipeline.process(samples, offset, chunk, false);
+                offset += chunk;
+            }
+            assertFalse(standby[0]);
+            // the starting signal in the chunk that woke the pipeline is not thrown away
+            assertEquals(1, nSpectra[0]);
+        } finally {
+            pipeline.finish();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.phoneear;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SymbolDetectorTest {
+    private static final int SAMPLE_RATE = 44100;
+
+    // the messages, 0.5 s apart, with white noise of the given standard deviation
+    private static String decode(AnalyzerParameters analyzerParam, double noise, String... messages) {
+        analyzerParam.sampleRate = SAMPLE_RATE;
+        ToneSynthesizer synthesizer = new ToneSynthesizer(ChannelPlan.create(analyzerParam), 0.25);
+        for (String message : messages) {
+            synthesizer.sendSilence(0.5);
+            synthesizer.send(message);
+        }
+        synthesizer.sendSilence(0.5);
+        short[] samples = new short[(int) synthesizer.remaining()];
+        synthesizer.read(samples, 0, samples.length);
+        Random random = new Random(1);
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) Math.max(Math.min(samples[i] + noise * random.nextGaussian(), 32767), -32768);
+        }
+        MessageCollector collector = new MessageCollector(analyzerParam, 1);
+        collector.decode(samples, 2048);
+        return collector.getText();
+    }
+
+    private static AnalyzerParameters soft() {
+        AnalyzerParameters analyzerParam = new AnalyzerParameters();
+        analyzerParam.detectorConfig.softDecision = true;
+        return analyzerParam;
+    }
+
+    @Test
+    public void softDecision_separatesRepeatedSymbols() {
+        // "HELLO" is 72 69 76 76 79, "WORLD" 87 79 82 76 68: the same digit in successive windows
+        assertEquals("HELLO WORLD", decode(soft(), 300, "HELLO", "WORLD"));
+    }
+
+    @Test
+    public void noiseFloor_separatesRepeatedSymbols() {
+        AnalyzerParameters hard = new AnalyzerParameters();
+        hard.detectorConfig.adaptiveNoiseFloor = true;
+        assertEquals("HELLO WORLD", decode(hard, 300, "HELLO", "WORLD"));
+        AnalyzerParameters soft = soft();
+        soft.detectorConfig.adaptiveNoiseFloor = true;
+        assertEquals("HELLO WORLD", decode(soft, 300, "HELLO", "WORLD"));
+    }
+
+    @Test
+    public void softDecision_errsNoMoreThanHardDecision() {
+        double[] snrs = {30, 10, 0, -5};
+        DecodeBenchmark.Scenario scenario = new DecodeBenchmark.Scenario("clean", 0, 0, 2, 5);
+        for (double snr : snrs) {
+            double hard = 0;
+            double soft = 0;
+            for (long seed = 1; seed <= 3; seed++) {
+                hard += DecodeBenchmark.run(new AnalyzerParameters(), scenario, snr, seed).characterErrorRate;
+                soft += DecodeBenchmark.run(soft(), scenario, snr, seed).characterErrorRate;
+            }
+            assertTrue("SNR " + snr + " dB: soft CER " + soft / 3 + ", hard CER " + hard / 3, soft <= hard);
+            if (snr >= 10) {
+                assertEquals("SNR " + snr + " dB", 0, soft, 0);
+            }
+        }
+    }
+}
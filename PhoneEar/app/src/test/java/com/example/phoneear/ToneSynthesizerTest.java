@@ -0,0 +1,59 @@
+package com.example.phoneear;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.*;
+
+public class ToneSynthesizerTest {
+    private static final int SAMPLE_RATE = 44100;
+
+    private static ChannelPlan channelPlan() {
+        return new ChannelPlan(ChannelPlan.DEFAULT_CARRIERS_HZ, ChannelPlan.DEFAULT_REFERENCES_HZ, SAMPLE_RATE, 512);
+    }
+
+    @Test
+    public void toneChanges_arePhaseContinuous() {
+        ToneSynthesizer synthesizer = new ToneSynthesizer(channelPlan(), 0.5);
+        synthesizer.setDurations(0.01, 0.0123, 0.017);   // changes at any phase
+        synthesizer.sendDigits("0918273645");
+        short[] samples = new short[(int) synthesizer.remaining()];
+        // in odd chunks, the phase must also run on between reads
+        for (int n = 0; n < samples.length; n += synthesizer.read(samples, n, Math.min(333, samples.length - n))) {
+            assertFalse(synthesizer.isFinished());
+        }
+        assertTrue(synthesizer.isFinished());
+        assertEquals(0, synthesizer.read(samples, 0, 1));
+
+        // no step larger than the slope of the highest tone
+        double maxStep = 0.5 * 32767 * 2 * Math.PI * 20000 / SAMPLE_RATE;
+        for (int i = 1; i < samples.length; i++) {
+            assertTrue("step at " + i, Math.abs(samples[i] - samples[i - 1]) <= maxStep + 2);
+        }
+    }
+
+    @Test
+    public void message_decodesFromWavFile() throws IOException {
+        ToneSynthesizer synthesizer = new ToneSynthesizer(channelPlan(), 0.1);
+        synthesizer.send("HI");
+        File file = File.createTempFile("phoneear", ".wav");
+        file.deleteOnExit();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            synthesizer.writeWav(out);
+        } finally {
+            out.close();
+        }
+
+        FileAudioSource source = new FileAudioSource(file, false);
+        AnalyzerParameters analyzerParam = new AnalyzerParameters();
+        analyzerParam.sampleRate = source.getSampleRate();
+        MessageCollector collector = new MessageCollector(analyzerParam, 1);
+        collector.decode(source.samples(), 2048);
+        assertEquals("HI", collector.getText());
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.phoneear;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class UiPublisherTest {
+    // records what a frame shows; the frames are driven by the test, not by a Choreographer
+    private static class RecordingDisplay implements UiPublisher.Display {
+        final List<double[]> spectra = new ArrayList<>();
+        final StringBuilder text = new StringBuilder();
+        final List<String> states = new ArrayList<>();
+
+        @Override
+        public void showSpectrum(ChannelPlan channelPlan, double[] spectrumDB) {
+            spectra.add(spectrumDB == null ? null : spectrumDB.clone());
+        }
+
+        @Override
+        public void clearText() {
+            text.setLength(0);
+        }
+
+        @Override
+        public void appendText(CharSequence s) {
+            text.append(s);
+        }
+
+        @Override
+        public void showState(String state) {
+            states.add(state);
+        }
+    }
+
+    @Test
+    public void spectraBetweenFrames_onlyTheNewestIsShown() {
+        RecordingDisplay display = new RecordingDisplay();
+        UiPublisher publisher = new UiPublisher(display);
+        for (int i = 0; i < 5; i++) {
+            publisher.publishSpectrum(null, new double[]{i, -i});
+        }
+        publisher.doFrame(0);
+        assertEquals(1, display.spectra.size());
+        assertArrayEquals(new double[]{4, -4}, display.spectra.get(0), 0);
+
+        // nothing new, nothing shown
+        publisher.doFrame(1);
+        assertEquals(1, display.spectra.size());
+
+        publisher.publishSpectrum(null, null);
+        publisher.doFrame(2);
+        assertNull(display.spectra.get(1));
+    }
+
+    @Test
+    public void textBetweenFrames_isAppendedAtOnce() {
+        RecordingDisplay display = new RecordingDisplay();
+        UiPublisher publisher = new UiPublisher(display);
+        publisher.appendText("old");
+        publisher.doFrame(0);
+        publisher.clearText();
+        publisher.appendText("\n[");
+        publisher.appendText("7");
+        publisher.appendText("2");
+        publisher.doFrame(1);
+        assertEquals("\n[72", display.text.toString());
+    }
+
+    @Test
+    public void sameState_isShownOnce() {
+        RecordingDisplay display = new RecordingDisplay();
+        UiPublisher publisher = new UiPublisher(display);
+        publisher.publishState("waiting");
+        publisher.doFrame(0);
+        publisher.publishState("receiving");
+        publisher.publishState("waiting");
+        publisher.doFrame(1);
+        publisher.publishState("receiving");
+        publisher.doFrame(2);
+        assertEquals(2, display.states.size());
+        assertEquals("receiving", display.states.get(1));
+    }
+}